@@ -0,0 +1,89 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.benchmark;
+
+import com.ginkel.hashit.util.Base64;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the base64 encoding of digests as produced by the supported MACs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Base64Benchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"20", "32"})
+    public int length;
+
+    private byte[] data;
+    private char[] out;
+    private byte[] batch;
+    private char[] batchOut;
+
+    @Setup
+    public void setUp() {
+        data = new byte[length];
+        new Random(length).nextBytes(data);
+        out = new char[Base64.encodedLength(length)];
+        batch = new byte[BATCH_SIZE * length];
+        new Random(length).nextBytes(batch);
+        batchOut = new char[BATCH_SIZE * Base64.encodedLength(length)];
+    }
+
+    /**
+     * The previous implementation, which encoded using commons-codec and stripped the padding.
+     */
+    @Benchmark
+    public String commonsCodec() {
+        String result = new String(org.apache.commons.codec.binary.Base64.encodeBase64(data));
+        int end = result.length();
+        while (end > 0 && result.charAt(end - 1) == '=') {
+            end--;
+        }
+        return result.substring(0, end);
+    }
+
+    @Benchmark
+    public String toBase64() {
+        return Base64.toBase64(data);
+    }
+
+    @Benchmark
+    public char[] toBase64Buffer() {
+        Base64.toBase64(data, 0, data.length, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public char[] toBase64Batch() {
+        Base64.toBase64(batch, 0, length, BATCH_SIZE, batchOut, 0);
+        return batchOut;
+    }
+}
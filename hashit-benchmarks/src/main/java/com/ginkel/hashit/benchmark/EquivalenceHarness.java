@@ -0,0 +1,427 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.benchmark;
+
+import com.ginkel.hashit.FastPasswordHasher;
+import com.ginkel.hashit.HashParameters;
+import com.ginkel.hashit.PasswordHasher;
+import com.ginkel.hashit.engine.HashEngine;
+import com.ginkel.hashit.engine.HashEngines;
+
+import org.apache.commons.codec.binary.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a large number of random (site tag, master key, parameters) tuples through the legacy
+ * hasher and a candidate engine, reporting every mismatch along with the throughput ratio of both.
+ * The legacy hasher is a frozen copy of the original regex-based {@link PasswordHasher}, so that
+ * the current one can be tested as a candidate, too. The input space is covered in parallel using
+ * a fork/join pool; the tuples are derived deterministically from a seed, so any reported mismatch
+ * can be reproduced.
+ * <p>
+ * Usage: {@code EquivalenceHarness [candidate] [samples] [seed]}, where candidate is one of
+ * {@code table}, {@code fast}, {@code batch}, {@code builtin} or {@code all}.
+ */
+public class EquivalenceHarness {
+    /** The number of tuples processed by a single leaf task */
+    private static final int LEAF_SIZE = 10000;
+
+    /** The maximum number of mismatches reported in detail */
+    private static final int MAX_REPORTED = 20;
+
+    /**
+     * A hashing engine under test. Instances are confined to a single leaf task.
+     */
+    interface Candidate {
+        String hashPassword(String siteTag, String masterKey, HashParameters parameters);
+    }
+
+    /**
+     * Creates the candidates under test, once per leaf task.
+     */
+    enum CandidateFactory {
+        TABLE {
+            Candidate create() {
+                return new Candidate() {
+                    public String hashPassword(String siteTag, String masterKey, HashParameters p) {
+                        return PasswordHasher.hashPassword(siteTag, masterKey, p);
+                    }
+                };
+            }
+        },
+        FAST {
+            Candidate create() {
+                return new Candidate() {
+                    public String hashPassword(String siteTag, String masterKey, HashParameters p) {
+                        return FastPasswordHasher.hashPassword(siteTag, masterKey,
+                                p.getHashWordSize(), p.isRequireDigit(), p.isRequirePunctuation(),
+                                p.isRequireMixedCase(), p.isRestrictSpecial(), p.isRestrictDigits());
+                    }
+                };
+            }
+        },
+        BATCH {
+            Candidate create() {
+                return new Candidate() {
+                    public String hashPassword(String siteTag, String masterKey, HashParameters p) {
+                        return PasswordHasher.batch(masterKey).hashPassword(siteTag, p);
+                    }
+                };
+            }
+        },
+        BUILTIN {
+            Candidate create() {
+                final HashEngine engine = HashEngines.newHmacSha1();
+                return new Candidate() {
+                    public String hashPassword(String siteTag, String masterKey, HashParameters p) {
+                        return PasswordHasher.batch(masterKey, engine).hashPassword(siteTag, p);
+                    }
+                };
+            }
+        };
+
+        abstract Candidate create();
+    }
+
+    /**
+     * The outcome of comparing a range of tuples.
+     */
+    static final class Result {
+        long samples;
+        long mismatches;
+        long legacyNanos;
+        long candidateNanos;
+        final List<String> reported = new ArrayList<String>();
+
+        Result merge(Result other) {
+            samples += other.samples;
+            mismatches += other.mismatches;
+            legacyNanos += other.legacyNanos;
+            candidateNanos += other.candidateNanos;
+            for (String mismatch : other.reported) {
+                if (reported.size() < MAX_REPORTED)
+                    reported.add(mismatch);
+            }
+            return this;
+        }
+    }
+
+    static final class CompareTask extends RecursiveTask<Result> {
+        private final CandidateFactory factory;
+        private final long seed;
+        private final long from;
+        private final long to;
+
+        CompareTask(CandidateFactory factory, long seed, long from, long to) {
+            this.factory = factory;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > LEAF_SIZE) {
+                long middle = (from + to) >>> 1;
+                CompareTask left = new CompareTask(factory, seed, from, middle);
+                left.fork();
+                Result right = new CompareTask(factory, seed, middle, to).compute();
+                return right.merge(left.join());
+            }
+            return compareLeaf();
+        }
+
+        private Result compareLeaf() {
+            final int count = (int) (to - from);
+            final String[] siteTags = new String[count];
+            final String[] masterKeys = new String[count];
+            final HashParameters[] parameters = new HashParameters[count];
+            final Random random = new Random(seed * 31 + from);
+            for (int ii = 0; ii < count; ii++) {
+                siteTags[ii] = randomString(random, 0, 24);
+                // the JCA rejects empty keys, so the legacy hasher does not support them
+                masterKeys[ii] = randomString(random, 1, 32);
+                parameters[ii] = new HashParameters(4 + random.nextInt(23), random.nextBoolean(),
+                        random.nextBoolean(), random.nextBoolean(), random.nextBoolean(),
+                        random.nextBoolean());
+            }
+
+            final String[] expected = new String[count];
+            final String[] actual = new String[count];
+            final Candidate candidate = factory.create();
+
+            Result result = new Result();
+            // alternate the order of both passes so that neither one systematically profits from
+            // the other warming up caches
+            if ((from / LEAF_SIZE & 1) == 0) {
+                result.legacyNanos = hashLegacy(siteTags, masterKeys, parameters, expected);
+                result.candidateNanos = hashCandidate(candidate, siteTags, masterKeys, parameters,
+                        actual);
+            } else {
+                result.candidateNanos = hashCandidate(candidate, siteTags, masterKeys, parameters,
+                        actual);
+                result.legacyNanos = hashLegacy(siteTags, masterKeys, parameters, expected);
+            }
+
+            result.samples = count;
+            for (int ii = 0; ii < count; ii++) {
+                if (!expected[ii].equals(actual[ii])) {
+                    result.mismatches++;
+                    if (result.reported.size() < MAX_REPORTED)
+                        result.reported.add(String.format("#%d tag=%s key=%s %s: expected %s, got %s",
+                                from + ii, escape(siteTags[ii]), escape(masterKeys[ii]),
+                                parameters[ii], expected[ii], actual[ii]));
+                }
+            }
+            return result;
+        }
+    }
+
+    private static long hashLegacy(String[] siteTags, String[] masterKeys,
+            HashParameters[] parameters, String[] out) {
+        long start = System.nanoTime();
+        for (int ii = 0; ii < out.length; ii++)
+            out[ii] = LegacyPasswordHasher.hashPassword(siteTags[ii], masterKeys[ii],
+                    parameters[ii]);
+        return System.nanoTime() - start;
+    }
+
+    private static long hashCandidate(Candidate candidate, String[] siteTags, String[] masterKeys,
+            HashParameters[] parameters, String[] out) {
+        long start = System.nanoTime();
+        for (int ii = 0; ii < out.length; ii++)
+            out[ii] = candidate.hashPassword(siteTags[ii], masterKeys[ii], parameters[ii]);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Creates a random string, mostly from printable ASCII characters, but occasionally containing
+     * arbitrary characters from the basic multilingual plane.
+     */
+    static String randomString(Random random, int minLength, int maxLength) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder result = new StringBuilder(length);
+        for (int ii = 0; ii < length; ii++) {
+            result.append(random.nextInt(16) == 0 ? (char) random.nextInt(0xd800)
+                    : (char) (' ' + random.nextInt(95)));
+        }
+        return result.toString();
+    }
+
+    private static String escape(String s) {
+        StringBuilder result = new StringBuilder(s.length() + 2).append('"');
+        for (int ii = 0; ii < s.length(); ii++) {
+            char c = s.charAt(ii);
+            if (c >= ' ' && c < 127 && c != '"' && c != '\\')
+                result.append(c);
+            else
+                result.append(String.format("\\u%04x", (int) c));
+        }
+        return result.append('"').toString();
+    }
+
+    public static void main(String[] args) {
+        if (!run(args))
+            throw new IllegalStateException("Candidates do not match the legacy hasher");
+    }
+
+    /**
+     * Compares the candidates selected by the arguments (see above) against the legacy hasher.
+     *
+     * @return whether all candidates produced the same hash words as the legacy hasher
+     */
+    public static boolean run(String... args) {
+        String candidateName = args.length > 0 ? args[0] : "all";
+        long samples = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.currentTimeMillis();
+
+        List<CandidateFactory> factories = new ArrayList<CandidateFactory>();
+        if ("all".equalsIgnoreCase(candidateName)) {
+            Collections.addAll(factories, CandidateFactory.values());
+        } else {
+            factories.add(CandidateFactory.valueOf(candidateName.toUpperCase()));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        boolean failed = false;
+        System.out.printf("Comparing %d tuples (seed %d) on %d threads%n", samples, seed,
+                pool.getParallelism());
+        for (CandidateFactory factory : factories) {
+            // warm up both paths before measuring
+            pool.invoke(new CompareTask(factory, ~seed, 0, Math.min(samples, 20 * LEAF_SIZE)));
+            Result result = pool.invoke(new CompareTask(factory, seed, 0, samples));
+            for (String mismatch : result.reported)
+                System.out.println("  MISMATCH " + mismatch);
+            System.out.printf("%-8s %d samples, %d mismatches, legacy %.0f/s, candidate %.0f/s, "
+                    + "ratio %.2fx%n", factory.name().toLowerCase(), result.samples,
+                    result.mismatches, rate(result.samples, result.legacyNanos),
+                    rate(result.samples, result.candidateNanos),
+                    (double) result.legacyNanos / Math.max(1, result.candidateNanos));
+            failed |= result.mismatches > 0;
+        }
+        pool.shutdown();
+        return !failed;
+    }
+
+    /**
+     * @return the number of hashes per second of (aggregated) thread time
+     */
+    private static double rate(long samples, long nanos) {
+        return samples * 1e9 / Math.max(1, nanos);
+    }
+
+    /**
+     * The original implementation of {@link PasswordHasher#hashPassword}, which all candidates
+     * must agree with. Do not optimize; only the logging was dropped.
+     */
+    static final class LegacyPasswordHasher {
+        private static final String HMAC_SHA1_ALGORITHM = "HmacSHA1";
+        private static final Pattern NUM_PATTERN = Pattern.compile("[^0-9]");
+        private static final Pattern SPECIAL_PATTERN = Pattern.compile("[^a-z0-9]",
+                Pattern.CASE_INSENSITIVE);
+
+        static String hashPassword(String siteTag, String masterKey, HashParameters p) {
+            return hashPassword(siteTag, masterKey, p.getHashWordSize(), p.isRequireDigit(),
+                    p.isRequirePunctuation(), p.isRequireMixedCase(), p.isRestrictSpecial(),
+                    p.isRestrictDigits());
+        }
+
+        static String hashPassword(String siteTag, String masterKey, int hashWordSize,
+                boolean requireDigit, boolean requirePunctuation, boolean requireMixedCase,
+                boolean restrictSpecial, boolean restrictDigits) {
+            try {
+                Mac hmacSha1 = Mac.getInstance(HMAC_SHA1_ALGORITHM);
+                SecretKeySpec key = new SecretKeySpec(masterKey.getBytes(), HMAC_SHA1_ALGORITHM);
+                hmacSha1.init(key);
+                String hash = toBase64(hmacSha1.doFinal(siteTag.getBytes()));
+
+                int sum = 0;
+                for (int ii = 0; ii < hash.length(); ii++)
+                    sum += hash.charAt(ii);
+
+                // Restrict digits just does a mod 10 of all the characters
+                if (restrictDigits)
+                    hash = convertToDigits(hash, sum, hashWordSize);
+                else {
+                    // Inject digit, punctuation, and mixed case as needed.
+                    if (requireDigit)
+                        hash = injectSpecialCharacter(hash, 0, 4, sum, hashWordSize, '0', 10);
+                    if (requirePunctuation && !restrictSpecial)
+                        hash = injectSpecialCharacter(hash, 1, 4, sum, hashWordSize, '!', 15);
+                    if (requireMixedCase) {
+                        hash = injectSpecialCharacter(hash, 2, 4, sum, hashWordSize, 'A', 26);
+                        hash = injectSpecialCharacter(hash, 3, 4, sum, hashWordSize, 'a', 26);
+                    }
+                    // Strip out special characters as needed.
+                    if (restrictSpecial)
+                        hash = removeSpecialCharacters(hash, sum, hashWordSize);
+                }
+
+                // Trim it to size.
+                return hash.substring(0, hashWordSize);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static String toBase64(byte[] data) {
+            StringBuilder result = new StringBuilder(new String(Base64.encodeBase64(data)));
+            // remove trailing padding
+            while (result.length() > 0 && result.charAt(result.length() - 1) == '=') {
+                result.replace(result.length() - 1, result.length(), "");
+            }
+            return result.toString();
+        }
+
+        private static String injectSpecialCharacter(String sInput, int offset, int reserved,
+                int seed, int lenOut, char cStart, int cNum) {
+            int pos0 = seed % lenOut;
+            int pos = (pos0 + offset) % lenOut;
+            // Check if a qualified character is already present
+            // Write the loop so that the reserved block is ignored.
+            for (int i = 0; i < lenOut - reserved; i++) {
+                int i2 = (pos0 + reserved + i) % lenOut;
+                char c = sInput.charAt(i2);
+                if (c >= cStart && c < cStart + cNum)
+                    return sInput; // Already present - nothing to do
+            }
+
+            StringBuilder result = new StringBuilder();
+            if (pos > 0) {
+                result.append(sInput.substring(0, pos));
+            }
+            result.append((char) (((seed + sInput.charAt(pos)) % cNum) + cStart));
+            if (pos + 1 < sInput.length()) {
+                result.append(sInput.substring(pos + 1, sInput.length()));
+            }
+            return result.toString();
+        }
+
+        private static String removeSpecialCharacters(String sInput, int seed, int lenOut) {
+            StringBuilder s = new StringBuilder(lenOut);
+            int ii = 0;
+            while (ii < lenOut) {
+                Matcher m = SPECIAL_PATTERN.matcher(sInput.substring(ii));
+                if (!m.find())
+                    break;
+                int matchPos = m.start();
+                if (matchPos > 0)
+                    s.append(sInput.substring(ii, ii + matchPos));
+                s.append((char) ((seed + ii) % 26 + 65));
+                ii += (matchPos + 1);
+            }
+            if (ii < sInput.length())
+                s.append(sInput.substring(ii));
+            return s.toString();
+        }
+
+        private static String convertToDigits(String sInput, int seed, int lenOut) {
+            StringBuilder s = new StringBuilder(lenOut);
+            int ii = 0;
+            while (ii < lenOut) {
+                Matcher m = NUM_PATTERN.matcher(sInput.substring(ii));
+                if (!m.find())
+                    break;
+                int matchPos = m.start();
+                if (matchPos > 0) {
+                    s.append(sInput.substring(ii, ii + matchPos));
+                }
+                s.append((char) ((seed + sInput.charAt(ii)) % 10 + 48));
+                ii += (matchPos + 1);
+            }
+            if (ii < sInput.length()) {
+                s.append(sInput.substring(ii));
+            }
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.benchmark;
+
+import com.ginkel.hashit.BatchHasher;
+import com.ginkel.hashit.FastPasswordHasher;
+import com.ginkel.hashit.HashParameters;
+import com.ginkel.hashit.PasswordHasher;
+import com.ginkel.hashit.engine.HashEngines;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the hashing engines across the full parameter matrix, i.e. every supported hash word
+ * size combined with every combination of requirements and restrictions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PasswordHasherBenchmark {
+    private static final String MASTER_KEY = "correct horse battery staple";
+    private static final String[] SITE_TAGS = {"google", "example:1", "amazon", "github:12",
+            "wikipedia", "stackoverflow", "mail", "bank:3"};
+
+    @Param({"4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18",
+            "19", "20", "21", "22", "23", "24", "25", "26"})
+    public int hashWordSize;
+
+    /**
+     * A bit mask of the boolean parameters (requireDigit, requirePunctuation, requireMixedCase,
+     * restrictSpecial, restrictDigits from the least significant bit upwards).
+     */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15",
+            "16", "17", "18", "19", "20", "21", "22", "23", "24", "25", "26", "27", "28", "29",
+            "30", "31"})
+    public int flags;
+
+    private HashParameters parameters;
+    private BatchHasher batch;
+    private BatchHasher builtinBatch;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        parameters = new HashParameters(hashWordSize, (flags & 1) != 0, (flags & 2) != 0,
+                (flags & 4) != 0, (flags & 8) != 0, (flags & 16) != 0);
+        batch = PasswordHasher.batch(MASTER_KEY);
+        builtinBatch = PasswordHasher.batch(MASTER_KEY, HashEngines.newHmacSha1());
+    }
+
+    private String nextSiteTag() {
+        return SITE_TAGS[next++ & (SITE_TAGS.length - 1)];
+    }
+
+    @Benchmark
+    public String legacy() {
+        return PasswordHasher.hashPassword(nextSiteTag(), MASTER_KEY, parameters);
+    }
+
+    @Benchmark
+    public String fast() {
+        return FastPasswordHasher.hashPassword(nextSiteTag(), MASTER_KEY, hashWordSize,
+                parameters.isRequireDigit(), parameters.isRequirePunctuation(),
+                parameters.isRequireMixedCase(), parameters.isRestrictSpecial(),
+                parameters.isRestrictDigits());
+    }
+
+    @Benchmark
+    public String batch() {
+        return batch.hashPassword(nextSiteTag(), parameters);
+    }
+
+    @Benchmark
+    public String builtinBatch() {
+        return builtinBatch.hashPassword(nextSiteTag(), parameters);
+    }
+}
@@ -18,32 +18,29 @@
  * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package com.ginkel.hashit.util;
+package com.ginkel.hashit.benchmark;
 
-import java.util.AbstractList;
-import java.util.List;
+import com.ginkel.hashit.PasswordHasher;
+import org.openjdk.jmh.annotations.*;
 
-import android.widget.ArrayAdapter;
+import java.util.concurrent.TimeUnit;
 
 /**
- * An adapter to convert an {@link ArrayAdapter} into a {@link List}.
- * 
- * @author Thilo-Alexander Ginkel
+ * Measures {@link PasswordHasher#bumpSiteTag(CharSequence)} for plain and already bumped site
+ * tags.
  */
-public class ArrayAdapterToListAdapter<E> extends AbstractList<E> {
-    private final ArrayAdapter<E> adapter;
-
-    public ArrayAdapterToListAdapter(ArrayAdapter<E> adapter) {
-        this.adapter = adapter;
-    }
-
-    @Override
-    public E get(int index) {
-        return adapter.getItem(index);
-    }
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SiteTagBenchmark {
+    @Param({"example", "example:1", "example:41"})
+    public String siteTag;
 
-    @Override
-    public int size() {
-        return adapter.getCount();
+    @Benchmark
+    public String bumpSiteTag() {
+        return PasswordHasher.bumpSiteTag(siteTag);
     }
 }
@@ -0,0 +1,352 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.cli;
+
+import com.ginkel.hashit.BatchHasher;
+import com.ginkel.hashit.HashParameters;
+import com.ginkel.hashit.PasswordHasher;
+import com.ginkel.hashit.PrivateTagCache;
+import com.ginkel.hashit.engine.HashEngines;
+import com.ginkel.hashit.util.Base64;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.*;
+
+/**
+ * Hashes the site tags listed in a file against a master key, e.g. to provision service accounts.
+ * <p>
+ * Each line of the input file contains a site tag, optionally followed by a tab and the hash word
+ * size, and another tab and the requirements of the hash word: <code>d</code> (digits),
+ * <code>p</code> (punctuation), <code>m</code> (mixed case), <code>s</code> (no special
+ * characters), <code>n</code> (digits only) or <code>-</code> (none). Omitted values default to
+ * those of the app, i.e. a size of 8 and <code>dpm</code>. The size must not exceed the length of
+ * the engine's encoded digest (e.g. 27 for HMAC-SHA1). Empty lines and lines starting with
+ * <code>#</code> are skipped.
+ * <p>
+ * The file is streamed and hashed in chunks by a pool of worker threads. At most two chunks per
+ * worker are in flight at any time, so memory use does not depend on the size of the file. The
+ * results are written in input order, one <code>siteTag&lt;TAB&gt;hashWord</code> line per site
+ * tag.
+ */
+public final class HashTool {
+    private static final String COMPATIBILITY_PREFIX = "compatible:";
+    private static final HashParameters DEFAULT_PARAMETERS = new HashParameters(8, //
+            true, // require digits
+            true, // require punctuation
+            true, // require mixed case
+            false, // no special chars
+            false // only digits
+    );
+    private static final int CHUNK_SIZE = 512;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final char[] masterKey;
+    private final String engine;
+    private final String seed;
+    /** The largest hash word size the engine supports, i.e. the length of an encoded digest */
+    private final int maxHashWordSize;
+
+    /**
+     * The private site tags, shared by all worker threads. The seed is hashed with each site tag as
+     * the key, so it cannot key a session of its own.
+     */
+    private final PrivateTagCache privateTags = new PrivateTagCache();
+
+    /**
+     * The master key session of a single worker thread.
+     */
+    private final ThreadLocal<BatchHasher> sessions = new ThreadLocal<BatchHasher>() {
+        @Override
+        protected BatchHasher initialValue() {
+            return PasswordHasher.batch(masterKey, HashEngines.forName(engine));
+        }
+    };
+
+    /**
+     * @param seed
+     *            the seed to derive private site tags with or <code>null</code> to hash all site
+     *            tags in compatibility mode
+     */
+    public HashTool(char[] masterKey, String engine, String seed) {
+        this.masterKey = masterKey;
+        this.engine = engine;
+        this.seed = seed;
+        // fails early on unknown engines
+        maxHashWordSize = Base64.encodedLength(HashEngines.forName(engine).getDigestLength());
+    }
+
+    /**
+     * Hashes all site tags of the input file and writes the hash words to the provided writer.
+     */
+    public void run(String inputFile, Writer out, int threads) throws IOException,
+            InterruptedException {
+        final LineReader reader = new LineReader(inputFile, READ_BUFFER_SIZE);
+        final ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            final LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+            String[] lines = new String[CHUNK_SIZE];
+            int count = 0;
+            int firstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines[count++] = line;
+                if (count == CHUNK_SIZE) {
+                    pending.add(workers.submit(new Chunk(lines, count, firstLine)));
+                    firstLine += count;
+                    lines = new String[CHUNK_SIZE];
+                    count = 0;
+                    // apply back pressure by waiting for the oldest chunk
+                    if (pending.size() >= threads * 2) {
+                        write(out, pending.removeFirst());
+                    }
+                }
+            }
+            if (count > 0) {
+                pending.add(workers.submit(new Chunk(lines, count, firstLine)));
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.removeFirst());
+            }
+            out.flush();
+        } finally {
+            workers.shutdownNow();
+            reader.close();
+        }
+    }
+
+    private static void write(Writer out, Future<String> chunk) throws IOException,
+            InterruptedException {
+        try {
+            out.write(chunk.get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException)
+                throw (IllegalArgumentException) e.getCause();
+            throw new IllegalStateException("Failed to hash site tags", e.getCause());
+        }
+    }
+
+    /**
+     * A run of consecutive input lines, which is hashed by a single worker.
+     */
+    private final class Chunk implements Callable<String> {
+        private final String[] lines;
+        private final int count;
+        private final int firstLine;
+
+        Chunk(String[] lines, int count, int firstLine) {
+            this.lines = lines;
+            this.count = count;
+            this.firstLine = firstLine;
+        }
+
+        public String call() {
+            final BatchHasher session = sessions.get();
+            final StringBuilder result = new StringBuilder(count * 48);
+            final char[] hashWord = new char[maxHashWordSize];
+            try {
+                for (int ii = 0; ii < count; ii++) {
+                    final String line = lines[ii];
+                    if (line.trim().length() == 0 || line.startsWith("#"))
+                        continue;
+                    final int lineNumber = firstLine + ii;
+                    final String[] fields = line.split("\t");
+                    final HashParameters parameters = parseParameters(fields, lineNumber,
+                            maxHashWordSize);
+                    String tag = fields[0];
+                    if (tag.startsWith(COMPATIBILITY_PREFIX)) {
+                        tag = tag.substring(COMPATIBILITY_PREFIX.length());
+                    } else if (seed != null) {
+                        tag = privateTags.getPrivateTag(seed, tag);
+                    }
+                    final int length;
+                    try {
+                        length = session.hashPassword(tag, parameters, hashWord, 0);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(String.format("Line %d: %s",
+                                lineNumber, e.getMessage()), e);
+                    }
+                    result.append(fields[0]).append('\t').append(hashWord, 0, length).append('\n');
+                }
+            } finally {
+                Arrays.fill(hashWord, '\0');
+            }
+            return result.toString();
+        }
+    }
+
+    static HashParameters parseParameters(String[] fields, int lineNumber, int maxHashWordSize) {
+        if (fields.length == 1)
+            return DEFAULT_PARAMETERS;
+        if (fields.length > 3)
+            throw new IllegalArgumentException(String.format("Line %d: too many fields",
+                    lineNumber));
+
+        final int size;
+        try {
+            size = Integer.parseInt(fields[1].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Line %d: invalid hash word size %s", lineNumber, fields[1]));
+        }
+        if (size < 4)
+            throw new IllegalArgumentException(String.format(
+                    "Line %d: hash word size %d is too small", lineNumber, size));
+        if (size > maxHashWordSize)
+            throw new IllegalArgumentException(String.format(
+                    "Line %d: hash word size %d exceeds %d", lineNumber, size, maxHashWordSize));
+        if (fields.length == 2)
+            return new HashParameters(size, DEFAULT_PARAMETERS.isRequireDigit(),
+                    DEFAULT_PARAMETERS.isRequirePunctuation(),
+                    DEFAULT_PARAMETERS.isRequireMixedCase(),
+                    DEFAULT_PARAMETERS.isRestrictSpecial(), DEFAULT_PARAMETERS.isRestrictDigits());
+
+        boolean requireDigit = false, requirePunctuation = false, requireMixedCase = false;
+        boolean restrictSpecial = false, restrictDigits = false;
+        for (char c : fields[2].trim().toCharArray()) {
+            switch (c) {
+                case 'd':
+                    requireDigit = true;
+                    break;
+                case 'p':
+                    requirePunctuation = true;
+                    break;
+                case 'm':
+                    requireMixedCase = true;
+                    break;
+                case 's':
+                    restrictSpecial = true;
+                    break;
+                case 'n':
+                    restrictDigits = true;
+                    break;
+                case '-':
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Line %d: unknown requirement '%c'", lineNumber, c));
+            }
+        }
+        return new HashParameters(size, requireDigit, requirePunctuation, requireMixedCase,
+                restrictSpecial, restrictDigits);
+    }
+
+    /**
+     * Reads the master key from the console without echoing it or, if there is no console, from
+     * the first line of the standard input.
+     */
+    private static char[] readMasterKey() throws IOException {
+        final Console console = System.console();
+        if (console != null) {
+            final char[] key = console.readPassword("Master key: ");
+            return key == null ? new char[0] : key;
+        }
+        final Reader in = new InputStreamReader(System.in);
+        char[] key = new char[64];
+        int length = 0;
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (length == key.length) {
+                final char[] grown = Arrays.copyOf(key, key.length * 2);
+                Arrays.fill(key, '\0');
+                key = grown;
+            }
+            key[length++] = (char) c;
+        }
+        if (length > 0 && key[length - 1] == '\r')
+            length--;
+        final char[] result = Arrays.copyOf(key, length);
+        Arrays.fill(key, '\0');
+        return result;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -jar hashit-cli.jar [options] <site tag file>");
+        System.err.println("  -e <engine>   hash engine, e.g. HmacSHA256 or PBKDF2WithHmacSHA1:<iterations>"
+                + " (default: " + HashEngines.HMAC_SHA1 + ")");
+        System.err.println("  -s <seed>     derive private site tags from the seed (default:"
+                + " compatibility mode)");
+        System.err.println("  -t <threads>  number of worker threads (default: number of cores)");
+        System.err.println("  -o <file>     write the hash words to a file instead of stdout");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String engine = HashEngines.HMAC_SHA1;
+        String seed = null;
+        String output = null;
+        String input = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int ii = 0; ii < args.length; ii++) {
+            final String arg = args[ii];
+            if (arg.startsWith("-") && ii + 1 == args.length)
+                usage();
+            if ("-e".equals(arg))
+                engine = args[++ii];
+            else if ("-s".equals(arg))
+                seed = args[++ii];
+            else if ("-o".equals(arg))
+                output = args[++ii];
+            else if ("-t".equals(arg)) {
+                try {
+                    threads = Integer.parseInt(args[++ii]);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (threads < 1)
+                    usage();
+            } else if (input == null && !arg.startsWith("-"))
+                input = arg;
+            else
+                usage();
+        }
+        if (input == null)
+            usage();
+
+        char[] masterKey = null;
+        try {
+            masterKey = readMasterKey();
+            if (masterKey.length == 0) {
+                System.err.println("The master key must not be empty");
+                System.exit(1);
+            }
+            final HashTool tool = new HashTool(masterKey, engine, seed);
+            final Writer out = new BufferedWriter(new OutputStreamWriter(output == null
+                    ? System.out : new FileOutputStream(output), "UTF-8"));
+            try {
+                tool.run(input, out, threads);
+            } finally {
+                if (output != null)
+                    out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } finally {
+            if (masterKey != null)
+                Arrays.fill(masterKey, '\0');
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.cli;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads a UTF-8 encoded file line by line through a {@link FileChannel}, using a fixed-size read
+ * buffer, so that arbitrarily large files can be processed in constant memory.
+ */
+final class LineReader implements Closeable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private byte[] line = new byte[256];
+    private boolean eof;
+
+    LineReader(String fileName, int bufferSize) throws IOException {
+        channel = new FileInputStream(fileName).getChannel();
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+    }
+
+    /**
+     * Returns the next line without its terminator or <code>null</code> at the end of the file.
+     */
+    String readLine() throws IOException {
+        int length = 0;
+        boolean data = false;
+        for (;;) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                final int read = eof ? -1 : channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    eof = true;
+                    return data ? decode(length) : null;
+                }
+                continue;
+            }
+            data = true;
+            final byte[] array = buffer.array();
+            final int start = buffer.position();
+            final int limit = buffer.limit();
+            int end = start;
+            while (end < limit && array[end] != '\n')
+                end++;
+            length = append(array, start, end - start, length);
+            if (end < limit) {
+                buffer.position(end + 1);
+                return decode(length);
+            }
+            buffer.position(limit);
+        }
+    }
+
+    private int append(byte[] src, int offset, int count, int length) {
+        if (length + count > line.length) {
+            final byte[] grown = new byte[Math.max(line.length * 2, length + count)];
+            System.arraycopy(line, 0, grown, 0, length);
+            line = grown;
+        }
+        System.arraycopy(src, offset, line, length, count);
+        return length + count;
+    }
+
+    private String decode(int length) {
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+        return new String(line, 0, length, UTF8);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
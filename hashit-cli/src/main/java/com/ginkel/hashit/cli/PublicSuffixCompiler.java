@@ -0,0 +1,176 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.cli;
+
+import com.ginkel.hashit.util.PublicSuffixTrie;
+
+import java.io.*;
+import java.net.IDN;
+import java.util.*;
+
+/**
+ * Compiles the public suffix list (<code>public_suffix_list.dat</code>) into the binary
+ * representation read by {@link PublicSuffixTrie}. Internationalized rules are added both in their
+ * Unicode and in their ASCII (punycode) form.
+ * <p>
+ * Usage: <code>java -cp hashit-cli.jar com.ginkel.hashit.cli.PublicSuffixCompiler
+ * public_suffix_list.dat public_suffixes.bin</code>
+ */
+public final class PublicSuffixCompiler {
+    private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            final int n = Math.min(a.length, b.length);
+            for (int ii = 0; ii < n; ii++) {
+                final int diff = (a[ii] & 0xff) - (b[ii] & 0xff);
+                if (diff != 0)
+                    return diff;
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private static final class Node {
+        final SortedMap<byte[], Node> children = new TreeMap<byte[], Node>(UNSIGNED);
+        int flags;
+        int offset;
+
+        int size() {
+            return 3 + children.size() * PublicSuffixTrie.CHILD_SIZE;
+        }
+    }
+
+    private final Node root = new Node();
+    private int rules;
+
+    private PublicSuffixCompiler() {
+    }
+
+    private void addRule(String rule) throws UnsupportedEncodingException {
+        int flags = PublicSuffixTrie.RULE;
+        if (rule.startsWith("!")) {
+            flags = PublicSuffixTrie.EXCEPTION;
+            rule = rule.substring(1);
+        }
+        if (rule.startsWith("*.")) {
+            flags = PublicSuffixTrie.WILDCARD;
+            rule = rule.substring(2);
+        }
+        if (rule.indexOf('*') >= 0)
+            throw new IllegalArgumentException("Unsupported rule " + rule);
+
+        final String[] labels = rule.toLowerCase(Locale.ENGLISH).split("\\.");
+        Node node = root;
+        for (int ii = labels.length - 1; ii >= 0; ii--) {
+            final byte[] label = labels[ii].getBytes("UTF-8");
+            if (label.length == 0 || label.length > 255)
+                throw new IllegalArgumentException("Invalid rule " + rule);
+            Node child = node.children.get(label);
+            if (child == null)
+                node.children.put(label, child = new Node());
+            node = child;
+        }
+        node.flags |= flags;
+        rules++;
+    }
+
+    private void write(OutputStream out) throws IOException {
+        // lay out the nodes breadth first and pool the labels
+        final List<Node> nodes = new ArrayList<Node>();
+        final Map<String, Integer> labelOffsets = new HashMap<String, Integer>();
+        final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        nodes.add(root);
+        int offset = 0;
+        for (int ii = 0; ii < nodes.size(); ii++) {
+            final Node node = nodes.get(ii);
+            node.offset = offset;
+            offset += node.size();
+            for (Map.Entry<byte[], Node> child : node.children.entrySet()) {
+                final String key = new String(child.getKey(), "UTF-8");
+                if (!labelOffsets.containsKey(key)) {
+                    labelOffsets.put(key, pool.size());
+                    pool.write(child.getKey());
+                }
+                nodes.add(child.getValue());
+            }
+        }
+
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(PublicSuffixTrie.MAGIC);
+        data.writeInt(pool.size());
+        pool.writeTo(data);
+        for (Node node : nodes) {
+            data.writeByte(node.flags);
+            data.writeShort(node.children.size());
+            for (Map.Entry<byte[], Node> child : node.children.entrySet()) {
+                data.writeInt(labelOffsets.get(new String(child.getKey(), "UTF-8")));
+                data.writeByte(child.getKey().length);
+                data.writeInt(child.getValue().offset);
+            }
+        }
+        data.flush();
+        System.err.println(String.format("%d rules, %d nodes, %d bytes", rules, nodes.size(),
+                data.size()));
+    }
+
+    /**
+     * Converts the labels of a rule to punycode, keeping its exception and wildcard markers.
+     */
+    private static String toAscii(String rule) {
+        int start = rule.startsWith("!") ? 1 : 0;
+        if (rule.startsWith("*.", start))
+            start += 2;
+        return rule.substring(0, start) + IDN.toASCII(rule.substring(start));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PublicSuffixCompiler <public_suffix_list.dat> <output>");
+            System.exit(2);
+        }
+        final PublicSuffixCompiler compiler = new PublicSuffixCompiler();
+        final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(
+                args[0]), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                // only the first word of a line is significant
+                line = line.trim();
+                final int space = line.indexOf(' ');
+                if (space >= 0)
+                    line = line.substring(0, space);
+                if (line.length() == 0 || line.startsWith("//"))
+                    continue;
+                compiler.addRule(line);
+                final String ascii = toAscii(line);
+                if (!ascii.equals(line))
+                    compiler.addRule(ascii);
+            }
+        } finally {
+            in.close();
+        }
+        final OutputStream out = new FileOutputStream(args[1]);
+        try {
+            compiler.write(out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.cli;
+
+import com.ginkel.hashit.HashParameters;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how {@link HashTool} parses the optional hash word size and requirements of a line.
+ */
+public class HashToolTest {
+    /** The encoded length of an HMAC-SHA1 digest */
+    private static final int MAX_SIZE = 27;
+
+    @Test
+    public void defaultsToAppParameters() {
+        assertEquals(new HashParameters(8, true, true, true, false, false), parse("gmail"));
+    }
+
+    @Test
+    public void parsesSize() {
+        assertEquals(new HashParameters(12, true, true, true, false, false),
+                parse("gmail\t 12 "));
+        assertEquals(new HashParameters(MAX_SIZE, true, true, true, false, false),
+                parse("gmail\t27"));
+    }
+
+    @Test
+    public void parsesRequirements() {
+        assertEquals(new HashParameters(10, true, false, true, false, false),
+                parse("gmail\t10\tdm"));
+        assertEquals(new HashParameters(10, false, true, false, true, false),
+                parse("gmail\t10\tps"));
+        assertEquals(new HashParameters(6, false, false, false, false, true),
+                parse("bank\t6\tn"));
+        assertEquals(new HashParameters(16, false, false, false, false, false),
+                parse("github\t16\t-"));
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        assertRejected("gmail\t8\tdpm\textra", "Line 7: too many fields");
+        assertRejected("gmail\teight", "Line 7: invalid hash word size eight");
+        assertRejected("gmail\t3", "Line 7: hash word size 3 is too small");
+        assertRejected("gmail\t28", "Line 7: hash word size 28 exceeds 27");
+        assertRejected("gmail\t8\tdx", "Line 7: unknown requirement 'x'");
+    }
+
+    private static HashParameters parse(String line) {
+        return HashTool.parseParameters(line.split("\t"), 7, MAX_SIZE);
+    }
+
+    private static void assertRejected(String line, String message) {
+        try {
+            parse(line);
+            fail("Accepted " + line);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import com.ginkel.hashit.engine.HashEngine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashing session bound to a single master key. The HMAC key setup is performed once when the
+ * session is created, after which any number of site tags may be hashed against that key state.
+ * Using an HMAC-SHA1 engine, the resulting hash words are identical to those of
+ * {@link PasswordHasher#hashPassword}.
+ * <p>
+ * Sessions are not thread-safe; concurrent callers must use one session per thread.
+ *
+ * @see PasswordHasher#batch(CharSequence)
+ * @see PasswordHasher#batch(CharSequence, HashEngine)
+ */
+public class BatchHasher {
+    private final FastPasswordHasher.Scratch scratch;
+
+    /**
+     * A single site tag to be hashed along with the parameters of its hash word.
+     */
+    public static final class Request {
+        private final String siteTag;
+        private final HashParameters parameters;
+
+        public Request(String siteTag, HashParameters parameters) {
+            this.siteTag = siteTag;
+            this.parameters = parameters;
+        }
+
+        public String getSiteTag() {
+            return siteTag;
+        }
+
+        public HashParameters getParameters() {
+            return parameters;
+        }
+    }
+
+    BatchHasher(CharSequence masterKey, HashEngine engine) {
+        scratch = new FastPasswordHasher.Scratch(engine);
+        scratch.init(masterKey);
+    }
+
+    /**
+     * Hashes a single site tag against the session's master key.
+     */
+    public String hashPassword(String siteTag, HashParameters parameters) {
+        return scratch.hash(siteTag, parameters.getHashWordSize(), parameters.isRequireDigit(),
+                parameters.isRequirePunctuation(), parameters.isRequireMixedCase(),
+                parameters.isRestrictSpecial(), parameters.isRestrictDigits());
+    }
+
+    /**
+     * Hashes a single site tag against the session's master key, writing the hash word into the
+     * provided array instead of creating a string, so that the caller may wipe it after use.
+     *
+     * @return the number of characters written, i.e. the hash word size
+     * @throws IndexOutOfBoundsException if the hash word does not fit into the array
+     */
+    public int hashPassword(CharSequence siteTag, HashParameters parameters, char[] hashWord,
+            int offset) {
+        return scratch.hash(siteTag, parameters.getHashWordSize(), parameters.isRequireDigit(),
+                parameters.isRequirePunctuation(), parameters.isRequireMixedCase(),
+                parameters.isRestrictSpecial(), parameters.isRestrictDigits(), hashWord, offset);
+    }
+
+    /**
+     * Hashes all requests and returns the hash words in the order of the requests.
+     */
+    public List<String> hashPasswords(Iterable<Request> requests) {
+        return hashPasswords(requests.iterator());
+    }
+
+    /**
+     * Hashes all requests and returns the hash words in the order of the requests.
+     */
+    public List<String> hashPasswords(Iterator<Request> requests) {
+        List<String> result = new ArrayList<String>();
+        while (requests.hasNext()) {
+            Request request = requests.next();
+            result.add(hashPassword(request.getSiteTag(), request.getParameters()));
+        }
+        return result;
+    }
+}
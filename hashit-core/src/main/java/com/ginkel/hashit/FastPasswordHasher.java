@@ -0,0 +1,268 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import com.ginkel.hashit.engine.HashEngine;
+import com.ginkel.hashit.engine.HashEngines;
+import com.ginkel.hashit.util.Base64;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * An alternative hashing engine producing exactly the same hash words as
+ * {@link PasswordHasher#hashPassword}. Instead of creating intermediate strings for every
+ * transformation step, it works in place on scratch buffers that are allocated once per thread.
+ */
+public final class FastPasswordHasher {
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(HashEngines.newJcaHmacSha1());
+        }
+    };
+
+    private FastPasswordHasher() {
+    }
+
+    /**
+     * The state of the hasher, which is reused across invocations. Instances are not thread-safe,
+     * so there is one per thread (or per {@link BatchHasher} session).
+     */
+    static final class Scratch {
+        private final HashEngine engine;
+        private final CharsetEncoder encoder;
+        private final byte[] digest;
+        private final char[] hash;
+        private ByteBuffer bytes = ByteBuffer.allocate(64);
+
+        Scratch(HashEngine engine) {
+            this.engine = engine;
+            digest = new byte[engine.getDigestLength()];
+            hash = new char[Base64.encodedLength(digest.length)];
+            // mirrors the replacement behavior of String.getBytes()
+            encoder = Charset.defaultCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        /**
+         * Encodes a character sequence using the platform's default charset into the scratch byte
+         * buffer, which is returned flipped for reading.
+         */
+        private ByteBuffer encode(CharSequence s) {
+            final int capacity = (int) Math.ceil(s.length() * (double) encoder.maxBytesPerChar());
+            if (bytes.capacity() < capacity) {
+                bytes = ByteBuffer.allocate(capacity);
+            }
+            bytes.clear();
+            encoder.reset();
+            final CharBuffer in = CharBuffer.wrap(s);
+            encoder.encode(in, bytes, true);
+            encoder.flush(bytes);
+            bytes.flip();
+            return bytes;
+        }
+
+        /**
+         * Keys the engine with the provided master key. The key state is retained until the next
+         * invocation, so any number of site tags may be hashed against it.
+         */
+        void init(CharSequence masterKey) {
+            final ByteBuffer key = encode(masterKey);
+            try {
+                engine.init(key.array(), 0, key.limit());
+            } finally {
+                wipe();
+            }
+        }
+
+        /**
+         * Hashes a site tag against the current key state.
+         */
+        String hash(CharSequence siteTag, int hashWordSize, boolean requireDigit,
+                boolean requirePunctuation, boolean requireMixedCase, boolean restrictSpecial,
+                boolean restrictDigits) {
+            final char[] hashWord = new char[hashWordSize];
+            hash(siteTag, hashWordSize, requireDigit, requirePunctuation, requireMixedCase,
+                    restrictSpecial, restrictDigits, hashWord, 0);
+            return new String(hashWord);
+        }
+
+        /**
+         * Hashes a site tag against the current key state, writing the hash word into the
+         * provided array.
+         *
+         * @return the number of characters written
+         */
+        int hash(CharSequence siteTag, int hashWordSize, boolean requireDigit,
+                boolean requirePunctuation, boolean requireMixedCase, boolean restrictSpecial,
+                boolean restrictDigits, char[] hashWord, int offset) {
+            if (offset < 0 || hashWordSize > hashWord.length - offset) {
+                throw new IndexOutOfBoundsException(String.format(
+                        "Hash word of size %d does not fit at offset %d", hashWordSize, offset));
+            }
+            final ByteBuffer message = encode(siteTag);
+            try {
+                engine.digest(message.array(), 0, message.limit(), digest, 0);
+
+                final int length = Base64.toBase64(digest, 0, digest.length, hash, 0);
+                if (hashWordSize > length) {
+                    throw new IllegalArgumentException(String.format(
+                            "Hash word size %d exceeds %d", hashWordSize, length));
+                }
+                applyRequirements(hash, length, hashWordSize, requireDigit, requirePunctuation,
+                        requireMixedCase, restrictSpecial, restrictDigits);
+
+                // Trim it to size.
+                System.arraycopy(hash, 0, hashWord, offset, hashWordSize);
+                return hashWordSize;
+            } finally {
+                Arrays.fill(digest, (byte) 0);
+                Arrays.fill(hash, '\0');
+            }
+        }
+
+        /**
+         * Overwrites the encoded bytes so that no key material lingers in the scratch buffer.
+         */
+        private void wipe() {
+            Arrays.fill(bytes.array(), (byte) 0);
+        }
+    }
+
+    /**
+     * The password hashing function. Takes the site tag and master key as input and returns the
+     * hash word (dependent on additional parameters that specify the domain of the hash word).
+     *
+     * @see PasswordHasher#hashPassword(String, String, int, boolean, boolean, boolean, boolean,
+     *      boolean)
+     */
+    public static String hashPassword(String siteTag, String masterKey, int hashWordSize,
+            boolean requireDigit, boolean requirePunctuation, boolean requireMixedCase,
+            boolean restrictSpecial, boolean restrictDigits) {
+        final Scratch scratch = SCRATCH.get();
+        scratch.init(masterKey);
+        return scratch.hash(siteTag, hashWordSize, requireDigit, requirePunctuation,
+                requireMixedCase, restrictSpecial, restrictDigits);
+    }
+
+    /**
+     * A variant of the password hashing function that reads the master key from an arbitrary
+     * character sequence (e.g. a {@link CharBuffer} wrapping a {@code char[]}) and writes the hash
+     * word into the provided array, so that no immutable copies of either are created.
+     *
+     * @return the number of characters written, i.e. the hash word size
+     */
+    public static int hashPassword(CharSequence siteTag, CharSequence masterKey,
+            HashParameters parameters, char[] hashWord, int offset) {
+        final Scratch scratch = SCRATCH.get();
+        scratch.init(masterKey);
+        return scratch.hash(siteTag, parameters.getHashWordSize(), parameters.isRequireDigit(),
+                parameters.isRequirePunctuation(), parameters.isRequireMixedCase(),
+                parameters.isRestrictSpecial(), parameters.isRestrictDigits(), hashWord, offset);
+    }
+
+    /**
+     * Applies the requirements and restrictions of the hash word domain to a base64 encoded digest
+     * in place.
+     */
+    static void applyRequirements(char[] hash, int length, int hashWordSize,
+            boolean requireDigit, boolean requirePunctuation, boolean requireMixedCase,
+            boolean restrictSpecial, boolean restrictDigits) {
+        int sum = 0;
+        for (int ii = 0; ii < length; ii++)
+            sum += hash[ii];
+
+        // Restrict digits just does a mod 10 of all the characters
+        if (restrictDigits)
+            convertToDigits(hash, length, sum, hashWordSize);
+        else {
+            // Inject digit, punctuation, and mixed case as needed.
+            if (requireDigit)
+                injectSpecialCharacter(hash, 0, 4, sum, hashWordSize, '0', 10);
+            if (requirePunctuation && !restrictSpecial)
+                injectSpecialCharacter(hash, 1, 4, sum, hashWordSize, '!', 15);
+            if (requireMixedCase) {
+                injectSpecialCharacter(hash, 2, 4, sum, hashWordSize, 'A', 26);
+                injectSpecialCharacter(hash, 3, 4, sum, hashWordSize, 'a', 26);
+            }
+            // Strip out special characters as needed.
+            if (restrictSpecial)
+                removeSpecialCharacters(hash, length, sum, hashWordSize);
+        }
+    }
+
+    /**
+     * Inject a character chosen from a range of character codes into a block at the front of the
+     * hash if one of those characters is not already present.
+     */
+    private static void injectSpecialCharacter(char[] hash, int offset, int reserved, int seed,
+            int lenOut, char cStart, int cNum) {
+        int pos0 = seed % lenOut;
+        int pos = (pos0 + offset) % lenOut;
+        // Check if a qualified character is already present
+        // Write the loop so that the reserved block is ignored.
+        for (int i = 0; i < lenOut - reserved; i++) {
+            char c = hash[(pos0 + reserved + i) % lenOut];
+            if (c >= cStart && c < cStart + cNum)
+                return; // Already present - nothing to do
+        }
+        hash[pos] = (char) (((seed + hash[pos]) % cNum) + cStart);
+    }
+
+    /**
+     * Replace special characters by digits and numbers.
+     */
+    private static void removeSpecialCharacters(char[] hash, int length, int seed, int lenOut) {
+        int ii = 0;
+        while (ii < lenOut) {
+            int match = ii;
+            while (match < length && !PasswordHasher.isSpecial(hash[match]))
+                match++;
+            if (match == length)
+                break;
+            hash[match] = (char) ((seed + ii) % 26 + 65);
+            ii = match + 1;
+        }
+    }
+
+    /**
+     * Converts the hash to a digits-only representation.
+     */
+    private static void convertToDigits(char[] hash, int length, int seed, int lenOut) {
+        int ii = 0;
+        while (ii < lenOut) {
+            int match = ii;
+            while (match < length && !PasswordHasher.isNonDigit(hash[match]))
+                match++;
+            if (match == length)
+                break;
+            // the legacy algorithm derives the digit from the start of the scanned range
+            hash[match] = (char) ((seed + hash[ii]) % 10 + 48);
+            ii = match + 1;
+        }
+    }
+}
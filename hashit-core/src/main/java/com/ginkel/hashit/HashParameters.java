@@ -0,0 +1,100 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+/**
+ * The parameters that specify the domain of a hash word, i.e. its size and the character classes
+ * it is required to (or must not) contain.
+ */
+public final class HashParameters {
+    private final int hashWordSize;
+    private final boolean requireDigit;
+    private final boolean requirePunctuation;
+    private final boolean requireMixedCase;
+    private final boolean restrictSpecial;
+    private final boolean restrictDigits;
+
+    public HashParameters(int hashWordSize, boolean requireDigit, boolean requirePunctuation,
+            boolean requireMixedCase, boolean restrictSpecial, boolean restrictDigits) {
+        this.hashWordSize = hashWordSize;
+        this.requireDigit = requireDigit;
+        this.requirePunctuation = requirePunctuation;
+        this.requireMixedCase = requireMixedCase;
+        this.restrictSpecial = restrictSpecial;
+        this.restrictDigits = restrictDigits;
+    }
+
+    public int getHashWordSize() {
+        return hashWordSize;
+    }
+
+    public boolean isRequireDigit() {
+        return requireDigit;
+    }
+
+    public boolean isRequirePunctuation() {
+        return requirePunctuation;
+    }
+
+    public boolean isRequireMixedCase() {
+        return requireMixedCase;
+    }
+
+    public boolean isRestrictSpecial() {
+        return restrictSpecial;
+    }
+
+    public boolean isRestrictDigits() {
+        return restrictDigits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof HashParameters))
+            return false;
+        HashParameters other = (HashParameters) o;
+        return hashWordSize == other.hashWordSize && requireDigit == other.requireDigit
+                && requirePunctuation == other.requirePunctuation
+                && requireMixedCase == other.requireMixedCase
+                && restrictSpecial == other.restrictSpecial
+                && restrictDigits == other.restrictDigits;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hashWordSize;
+        result = 2 * result + (requireDigit ? 1 : 0);
+        result = 2 * result + (requirePunctuation ? 1 : 0);
+        result = 2 * result + (requireMixedCase ? 1 : 0);
+        result = 2 * result + (restrictSpecial ? 1 : 0);
+        result = 2 * result + (restrictDigits ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HashParameters[size=%d, digit=%b, punctuation=%b, mixedCase=%b, "
+                + "noSpecial=%b, digitsOnly=%b]", hashWordSize, requireDigit, requirePunctuation,
+                requireMixedCase, restrictSpecial, restrictDigits);
+    }
+}
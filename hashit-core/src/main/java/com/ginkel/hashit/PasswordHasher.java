@@ -20,11 +20,13 @@
 
 package com.ginkel.hashit;
 
-import android.util.Log;
+import com.ginkel.hashit.engine.HashEngine;
+import com.ginkel.hashit.engine.HashEngines;
 import com.ginkel.hashit.util.Base64;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.CharBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
@@ -34,12 +36,18 @@ public class PasswordHasher {
     /** The MAC to be used for hashing the site tag */
     private static final String HMAC_SHA1_ALGORITHM = "HmacSHA1";
 
-    /** A pattern that matches numerical digits */
-    private static final Pattern NUM_PATTERN = Pattern.compile("[^0-9]");
+    /** Flags the ASCII characters that are not numerical digits (i.e. those matching [^0-9]) */
+    private static final boolean[] NON_DIGIT = new boolean[128];
 
-    /** Matches all special characters */
-    private static final Pattern SPECIAL_PATTERN = Pattern.compile("[^a-z0-9]",
-            Pattern.CASE_INSENSITIVE);
+    /** Flags the ASCII special characters (i.e. those matching [^a-z0-9] case-insensitively) */
+    private static final boolean[] SPECIAL = new boolean[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            NON_DIGIT[c] = c < '0' || c > '9';
+            SPECIAL[c] = NON_DIGIT[c] && (c < 'a' || c > 'z') && (c < 'A' || c > 'Z');
+        }
+    }
 
     /** Matches a site tag */
     private static final Pattern SITE_TAG_PATTERN = Pattern.compile("^(.*):([0-9]+)?$");
@@ -82,14 +90,53 @@ public class PasswordHasher {
             // Trim it to size.
             return hash.substring(0, hashWordSize);
         } catch (NoSuchAlgorithmException e) {
-            Log.e(Constants.LOG_TAG, HMAC_SHA1_ALGORITHM + " not present", e);
-            throw new IllegalStateException(HMAC_SHA1_ALGORITHM + " not present");
+            throw new IllegalStateException(HMAC_SHA1_ALGORITHM + " not present", e);
         } catch (InvalidKeyException e) {
-            Log.e(Constants.LOG_TAG, "Failed to hash secret", e);
-            throw new IllegalStateException(e);
+            throw new IllegalStateException("Failed to hash secret", e);
         }
     }
 
+    /**
+     * A convenience variant of the password hashing function taking the hash word parameters as a
+     * single value.
+     */
+    public static String hashPassword(String siteTag, String masterKey, HashParameters parameters) {
+        return hashPassword(siteTag, masterKey, parameters.getHashWordSize(),
+                parameters.isRequireDigit(), parameters.isRequirePunctuation(),
+                parameters.isRequireMixedCase(), parameters.isRestrictSpecial(),
+                parameters.isRestrictDigits());
+    }
+
+    /**
+     * Starts a hashing session for the given master key, which performs the HMAC key setup only
+     * once for any number of site tags.
+     */
+    public static BatchHasher batch(CharSequence masterKey) {
+        return batch(masterKey, HashEngines.newJcaHmacSha1());
+    }
+
+    /**
+     * Starts a hashing session for the given master key using a specific engine, e.g. the built-in
+     * HMAC-SHA1 implementation, which avoids the security provider lookup.
+     * <p>
+     * The master key is only read during the call, so callers holding it in a mutable buffer may
+     * wipe that buffer as soon as this method returns.
+     *
+     * @see HashEngines
+     */
+    public static BatchHasher batch(CharSequence masterKey, HashEngine engine) {
+        return new BatchHasher(masterKey, engine);
+    }
+
+    /**
+     * Starts a hashing session for a master key held in a character array.
+     *
+     * @see #batch(CharSequence, HashEngine)
+     */
+    public static BatchHasher batch(char[] masterKey, HashEngine engine) {
+        return new BatchHasher(CharBuffer.wrap(masterKey), engine);
+    }
+
     /**
      * Inject a character chosen from a range of character codes into a block at the front of a
      * string if one of those characters is not already present.
@@ -122,44 +169,51 @@ public class PasswordHasher {
      * Replace special characters by digits and numbers.
      */
     private static String removeSpecialCharacters(String sInput, int seed, int lenOut) {
-        StringBuilder s = new StringBuilder(lenOut);
+        char[] s = sInput.toCharArray();
         int ii = 0;
+        int pos = 0;
         while (ii < lenOut) {
-            Matcher m = SPECIAL_PATTERN.matcher(sInput.substring(ii));
-            if (!m.find())
+            while (pos < s.length && !isSpecial(s[pos]))
+                pos++;
+            if (pos == s.length)
                 break;
-            int matchPos = m.start();
-            if (matchPos > 0)
-                s.append(sInput.substring(ii, ii + matchPos));
-            s.append((char) ((seed + ii) % 26 + 65));
-            ii += (matchPos + 1);
+            s[pos] = (char) ((seed + ii) % 26 + 65);
+            ii = ++pos;
         }
-        if (ii < sInput.length())
-            s.append(sInput.substring(ii));
-        return s.toString();
+        return new String(s);
     }
 
     /**
      * Converts the input string to a digits-only representation.
      */
     private static String convertToDigits(String sInput, int seed, int lenOut) {
-        StringBuilder s = new StringBuilder(lenOut);
+        char[] s = sInput.toCharArray();
         int ii = 0;
+        int pos = 0;
         while (ii < lenOut) {
-            Matcher m = NUM_PATTERN.matcher(sInput.substring(ii));
-            if (!m.find())
+            while (pos < s.length && !isNonDigit(s[pos]))
+                pos++;
+            if (pos == s.length)
                 break;
-            int matchPos = m.start();
-            if (matchPos > 0) {
-                s.append(sInput.substring(ii, ii + matchPos));
-            }
-            s.append((char) ((seed + sInput.charAt(ii)) % 10 + 48));
-            ii += (matchPos + 1);
-        }
-        if (ii < sInput.length()) {
-            s.append(sInput.substring(ii));
+            // derived from the first character of the scanned range (not the replaced one)
+            s[pos] = (char) ((seed + s[ii]) % 10 + 48);
+            ii = ++pos;
         }
-        return s.toString();
+        return new String(s);
+    }
+
+    /**
+     * @return whether the character is matched by [^a-z0-9] (case-insensitively)
+     */
+    static boolean isSpecial(char c) {
+        return c >= 128 || SPECIAL[c];
+    }
+
+    /**
+     * @return whether the character is matched by [^0-9]
+     */
+    static boolean isNonDigit(char c) {
+        return c >= 128 || NON_DIGIT[c];
     }
 
     /**
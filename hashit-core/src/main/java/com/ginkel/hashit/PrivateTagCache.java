@@ -0,0 +1,102 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of private site tags, i.e. the seed hashed with the site tag as the key.
+ * Deriving a private tag costs a full hash, but the seed and the site tags in use rarely change.
+ * <p>
+ * The cache only holds private tags for a single seed and starts over whenever it is queried
+ * with a different one. Instances are thread-safe, so batch callers may share them.
+ */
+public final class PrivateTagCache {
+    /** The parameters used to turn a site tag into a private site tag using the seed */
+    public static final HashParameters PRIVATE_TAG_PARAMETERS = new HashParameters(24, //
+            true, // require digits
+            true, // require punctuation
+            true, // require mixed case
+            false, // no special chars
+            false // only digits
+    );
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Map<String, String> tags;
+    private String seed;
+
+    public PrivateTagCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PrivateTagCache(final int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        tags = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the private site tag for the given seed and site tag, deriving (and caching) it if
+     * necessary.
+     */
+    public String getPrivateTag(String seed, String siteTag) {
+        String privateTag;
+        synchronized (this) {
+            if (!seed.equals(this.seed)) {
+                tags.clear();
+                this.seed = seed;
+            }
+            privateTag = tags.get(siteTag);
+        }
+        if (privateTag == null) {
+            // derive outside the lock, so that concurrent callers do not serialize on the hash;
+            // the seed is hashed with the site tag as the key, just like earlier versions did
+            privateTag = FastPasswordHasher.hashPassword(seed, siteTag,
+                    PRIVATE_TAG_PARAMETERS.getHashWordSize(),
+                    PRIVATE_TAG_PARAMETERS.isRequireDigit(),
+                    PRIVATE_TAG_PARAMETERS.isRequirePunctuation(),
+                    PRIVATE_TAG_PARAMETERS.isRequireMixedCase(),
+                    PRIVATE_TAG_PARAMETERS.isRestrictSpecial(),
+                    PRIVATE_TAG_PARAMETERS.isRestrictDigits());
+            synchronized (this) {
+                // the seed may have been changed in the meantime
+                if (seed.equals(this.seed))
+                    tags.put(siteTag, privateTag);
+            }
+        }
+        return privateTag;
+    }
+
+    /**
+     * Removes all cached private tags, e.g. because the seed has been changed.
+     */
+    public synchronized void clear() {
+        tags.clear();
+        seed = null;
+    }
+}
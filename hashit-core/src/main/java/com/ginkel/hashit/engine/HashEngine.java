@@ -0,0 +1,52 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+/**
+ * A keyed message digest used to hash a site tag with the master key. Engines are stateful: once
+ * keyed, any number of messages can be digested against the same key. Instances are not
+ * thread-safe.
+ *
+ * @see HashEngines
+ */
+public interface HashEngine {
+    /**
+     * @return the name of the algorithm implemented by this engine (e.g. "HmacSHA1"), which is the
+     *         same for all implementations producing identical digests
+     */
+    String getName();
+
+    /**
+     * @return the length of the digests produced by this engine in bytes
+     */
+    int getDigestLength();
+
+    /**
+     * Keys the engine. The key state is retained until the engine is keyed again.
+     */
+    void init(byte[] key, int offset, int length);
+
+    /**
+     * Digests a message using the current key and writes {@link #getDigestLength()} bytes to the
+     * output buffer.
+     */
+    void digest(byte[] message, int offset, int length, byte[] out, int outOffset);
+}
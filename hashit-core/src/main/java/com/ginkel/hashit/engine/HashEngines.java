@@ -0,0 +1,102 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+/**
+ * Creates the available {@link HashEngine}s.
+ */
+public final class HashEngines {
+    /** The name of the HMAC-SHA1 algorithm used by Hash It! */
+    public static final String HMAC_SHA1 = "HmacSHA1";
+
+    /** The name of the HMAC-SHA256 algorithm */
+    public static final String HMAC_SHA256 = "HmacSHA256";
+
+    /**
+     * The name of the PBKDF2 key derivation with HMAC-SHA1 as the pseudo-random function. Engine
+     * names append the iteration count, e.g. "PBKDF2WithHmacSHA1:10000".
+     */
+    public static final String PBKDF2_HMAC_SHA1 = "PBKDF2WithHmacSHA1";
+
+    private HashEngines() {
+    }
+
+    /**
+     * Creates an HMAC-SHA1 engine backed by the installed security providers. This is what
+     * {@link com.ginkel.hashit.PasswordHasher#hashPassword} uses.
+     */
+    public static HashEngine newJcaHmacSha1() {
+        return new JcaHmacEngine(HMAC_SHA1);
+    }
+
+    /**
+     * Creates the built-in HMAC-SHA1 engine, which produces the very same digests as
+     * {@link #newJcaHmacSha1()} but does not require a provider lookup.
+     */
+    public static HashEngine newHmacSha1() {
+        return new HmacSha1Engine();
+    }
+
+    /**
+     * Creates an HMAC-SHA256 engine backed by the installed security providers.
+     */
+    public static HashEngine newHmacSha256() {
+        return new JcaHmacEngine(HMAC_SHA256);
+    }
+
+    /**
+     * Creates a PBKDF2 engine using HMAC-SHA1 with the given number of iterations.
+     */
+    public static HashEngine newPbkdf2HmacSha1(int iterations) {
+        return new Pbkdf2Engine(newHmacSha1(), pbkdf2Name(iterations), iterations);
+    }
+
+    /**
+     * @return the engine name of PBKDF2 with HMAC-SHA1 and the given number of iterations
+     */
+    public static String pbkdf2Name(int iterations) {
+        return PBKDF2_HMAC_SHA1 + ':' + iterations;
+    }
+
+    /**
+     * Creates an engine from its name as returned by {@link HashEngine#getName()}, which is what
+     * gets persisted along with a site's parameters. HMAC-SHA1 is served by the built-in
+     * implementation.
+     *
+     * @throws IllegalArgumentException
+     *             if the name does not denote a known engine
+     */
+    public static HashEngine forName(String name) {
+        if (HMAC_SHA1.equals(name)) {
+            return newHmacSha1();
+        } else if (HMAC_SHA256.equals(name)) {
+            return newHmacSha256();
+        } else if (name != null && name.startsWith(PBKDF2_HMAC_SHA1 + ':')) {
+            try {
+                return newPbkdf2HmacSha1(Integer.parseInt(name.substring(PBKDF2_HMAC_SHA1
+                        .length() + 1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Invalid engine %s", name), e);
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown engine %s", name));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+import java.util.Arrays;
+
+/**
+ * A self-contained HMAC-SHA1 implementation (RFC 2104 on top of FIPS 180-1), which produces the
+ * same digests as the JCA "HmacSHA1" MAC without going through the security provider machinery.
+ * The inner and outer hash states are computed once when keying the engine, so digesting a
+ * message only costs the compression of the message and a single block for the outer hash.
+ */
+final class HmacSha1Engine implements HashEngine {
+    private static final int BLOCK_SIZE = 64;
+    private static final int DIGEST_LENGTH = 20;
+
+    private static final int[] INITIAL_STATE = {0x67452301, 0xEFCDAB89, 0x98BADCFE, 0x10325476,
+            0xC3D2E1F0};
+
+    private final int[] innerState = new int[5];
+    private final int[] outerState = new int[5];
+    private final int[] state = new int[5];
+    private final int[] schedule = new int[80];
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] pad = new byte[BLOCK_SIZE];
+    private final byte[] innerDigest = new byte[DIGEST_LENGTH];
+    private int blockLength;
+    private long length;
+
+    public String getName() {
+        return HashEngines.HMAC_SHA1;
+    }
+
+    public int getDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    public void init(byte[] key, int offset, int length) {
+        if (length > BLOCK_SIZE) {
+            // keys longer than the block size are hashed first
+            start(INITIAL_STATE, 0);
+            update(key, offset, length);
+            finish(innerDigest, 0);
+            key = innerDigest;
+            offset = 0;
+            length = DIGEST_LENGTH;
+        }
+
+        for (int ii = 0; ii < BLOCK_SIZE; ii++)
+            pad[ii] = (byte) ((ii < length ? key[offset + ii] : 0) ^ 0x36);
+        start(INITIAL_STATE, 0);
+        compress(pad, 0);
+        System.arraycopy(state, 0, innerState, 0, 5);
+
+        for (int ii = 0; ii < BLOCK_SIZE; ii++)
+            pad[ii] = (byte) ((ii < length ? key[offset + ii] : 0) ^ 0x5c);
+        start(INITIAL_STATE, 0);
+        compress(pad, 0);
+        System.arraycopy(state, 0, outerState, 0, 5);
+
+        // do not keep any key material around except for the derived hash states
+        Arrays.fill(pad, (byte) 0);
+        Arrays.fill(innerDigest, (byte) 0);
+        Arrays.fill(block, (byte) 0);
+        Arrays.fill(schedule, 0);
+    }
+
+    public void digest(byte[] message, int offset, int length, byte[] out, int outOffset) {
+        start(innerState, BLOCK_SIZE);
+        update(message, offset, length);
+        finish(innerDigest, 0);
+
+        start(outerState, BLOCK_SIZE);
+        update(innerDigest, 0, DIGEST_LENGTH);
+        finish(out, outOffset);
+    }
+
+    /**
+     * Resumes hashing from the given state, which has already consumed the given number of bytes.
+     */
+    private void start(int[] initialState, long consumed) {
+        System.arraycopy(initialState, 0, state, 0, 5);
+        blockLength = 0;
+        length = consumed;
+    }
+
+    private void update(byte[] data, int offset, int len) {
+        length += len;
+        while (len > 0) {
+            if (blockLength == 0 && len >= BLOCK_SIZE) {
+                compress(data, offset);
+                offset += BLOCK_SIZE;
+                len -= BLOCK_SIZE;
+            } else {
+                int chunk = Math.min(BLOCK_SIZE - blockLength, len);
+                System.arraycopy(data, offset, block, blockLength, chunk);
+                blockLength += chunk;
+                offset += chunk;
+                len -= chunk;
+                if (blockLength == BLOCK_SIZE) {
+                    compress(block, 0);
+                    blockLength = 0;
+                }
+            }
+        }
+    }
+
+    private void finish(byte[] out, int outOffset) {
+        final long bits = length << 3;
+        block[blockLength++] = (byte) 0x80;
+        if (blockLength > BLOCK_SIZE - 8) {
+            Arrays.fill(block, blockLength, BLOCK_SIZE, (byte) 0);
+            compress(block, 0);
+            blockLength = 0;
+        }
+        Arrays.fill(block, blockLength, BLOCK_SIZE - 8, (byte) 0);
+        for (int ii = 0; ii < 8; ii++)
+            block[BLOCK_SIZE - 8 + ii] = (byte) (bits >>> (56 - 8 * ii));
+        compress(block, 0);
+        blockLength = 0;
+
+        for (int ii = 0; ii < 5; ii++) {
+            final int word = state[ii];
+            out[outOffset++] = (byte) (word >>> 24);
+            out[outOffset++] = (byte) (word >>> 16);
+            out[outOffset++] = (byte) (word >>> 8);
+            out[outOffset++] = (byte) word;
+        }
+    }
+
+    private void compress(byte[] data, int offset) {
+        final int[] w = schedule;
+        for (int t = 0; t < 16; t++, offset += 4)
+            w[t] = data[offset] << 24 | (data[offset + 1] & 0xff) << 16
+                    | (data[offset + 2] & 0xff) << 8 | data[offset + 3] & 0xff;
+        for (int t = 16; t < 80; t++)
+            w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+
+        int a = state[0], b = state[1], c = state[2], d = state[3], e = state[4];
+        for (int t = 0; t < 80; t++) {
+            final int f;
+            if (t < 20)
+                f = (b & c | ~b & d) + 0x5A827999;
+            else if (t < 40)
+                f = (b ^ c ^ d) + 0x6ED9EBA1;
+            else if (t < 60)
+                f = (b & c | b & d | c & d) + 0x8F1BBCDC;
+            else
+                f = (b ^ c ^ d) + 0xCA62C1D6;
+            final int temp = Integer.rotateLeft(a, 5) + f + e + w[t];
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+    }
+}
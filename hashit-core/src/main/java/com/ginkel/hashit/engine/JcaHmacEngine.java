@@ -0,0 +1,69 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A {@link HashEngine} backed by a {@link Mac} obtained from the installed security providers.
+ */
+final class JcaHmacEngine implements HashEngine {
+    private final String algorithm;
+    private final Mac mac;
+
+    JcaHmacEngine(String algorithm) {
+        this.algorithm = algorithm;
+        try {
+            mac = Mac.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not present", e);
+        }
+    }
+
+    public String getName() {
+        return algorithm;
+    }
+
+    public int getDigestLength() {
+        return mac.getMacLength();
+    }
+
+    public void init(byte[] key, int offset, int length) {
+        try {
+            mac.init(new SecretKeySpec(key, offset, length, algorithm));
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("Failed to hash secret", e);
+        }
+    }
+
+    public void digest(byte[] message, int offset, int length, byte[] out, int outOffset) {
+        mac.update(message, offset, length);
+        try {
+            mac.doFinal(out, outOffset);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
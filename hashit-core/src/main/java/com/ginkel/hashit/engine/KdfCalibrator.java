@@ -0,0 +1,66 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+/**
+ * Determines the PBKDF2 iteration count that makes hashing take a given amount of time on the
+ * current device, so that key stretching does not render hashing unbearably slow on older
+ * phones (and not needlessly weak on fast ones).
+ */
+public final class KdfCalibrator {
+    /** The iteration count is never calibrated below this value */
+    public static final int MIN_ITERATIONS = 1000;
+
+    /** The default latency targeted by the calibration */
+    public static final long DEFAULT_TARGET_MILLIS = 250;
+
+    private KdfCalibrator() {
+    }
+
+    /**
+     * Measures the PBKDF2 pseudo-random function and returns the number of iterations that can be
+     * performed within the target latency (rounded down to a multiple of {@link #MIN_ITERATIONS},
+     * but at least {@link #MIN_ITERATIONS}). Blocks for a fraction of the target latency.
+     */
+    public static int calibratePbkdf2(long targetMillis) {
+        final HashEngine prf = HashEngines.newHmacSha1();
+        final byte[] block = new byte[prf.getDigestLength()];
+        prf.init(block, 0, block.length);
+
+        // double the number of rounds until the measurement is long enough to be meaningful
+        final long minNanos = Math.max(targetMillis * 1000000L / 8, 20 * 1000000L);
+        long rounds = 256;
+        long elapsed;
+        while (true) {
+            final long start = System.nanoTime();
+            for (long ii = 0; ii < rounds; ii++)
+                prf.digest(block, 0, block.length, block, 0);
+            elapsed = Math.max(1, System.nanoTime() - start);
+            if (elapsed >= minNanos || rounds >= Integer.MAX_VALUE)
+                break;
+            rounds <<= 1;
+        }
+
+        final long iterations = rounds * targetMillis * 1000000L / elapsed;
+        return (int) Math.min(Integer.MAX_VALUE - MIN_ITERATIONS,
+                Math.max(MIN_ITERATIONS, iterations / MIN_ITERATIONS * MIN_ITERATIONS));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+import java.util.Arrays;
+
+/**
+ * A {@link HashEngine} stretching the master key using PBKDF2 (RFC 2898) with the site tag as the
+ * salt. Only the first block of the derived key is computed, i.e. the digest has the length of the
+ * underlying pseudo-random function.
+ */
+final class Pbkdf2Engine implements HashEngine {
+    private final HashEngine prf;
+    private final String name;
+    private final int iterations;
+    private final byte[] u;
+    private final byte[] t;
+    private byte[] salt = new byte[64];
+
+    Pbkdf2Engine(HashEngine prf, String name, int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("Invalid iteration count " + iterations);
+        this.prf = prf;
+        this.name = name;
+        this.iterations = iterations;
+        u = new byte[prf.getDigestLength()];
+        t = new byte[prf.getDigestLength()];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getDigestLength() {
+        return prf.getDigestLength();
+    }
+
+    public void init(byte[] key, int offset, int length) {
+        prf.init(key, offset, length);
+    }
+
+    public void digest(byte[] message, int offset, int length, byte[] out, int outOffset) {
+        if (salt.length < length + 4)
+            salt = new byte[length + 4];
+        System.arraycopy(message, offset, salt, 0, length);
+        // INT(1), the index of the (only) block being derived
+        salt[length] = 0;
+        salt[length + 1] = 0;
+        salt[length + 2] = 0;
+        salt[length + 3] = 1;
+
+        prf.digest(salt, 0, length + 4, u, 0);
+        System.arraycopy(u, 0, t, 0, u.length);
+        for (int ii = 1; ii < iterations; ii++) {
+            prf.digest(u, 0, u.length, u, 0);
+            for (int jj = 0; jj < t.length; jj++)
+                t[jj] ^= u[jj];
+        }
+        System.arraycopy(t, 0, out, outOffset, t.length);
+
+        Arrays.fill(u, (byte) 0);
+        Arrays.fill(t, (byte) 0);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+/**
+ * A Base64 helper class.
+ * 
+ * @author Thilo-Alexander Ginkel
+ */
+public class Base64 {
+    /** The base64 alphabet */
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .toCharArray();
+
+    /**
+     * Converts a byte array into its base64 representation (skipping any trailing padding).
+     * 
+     * @param data
+     *            the data to convert
+     * @return the data's base64 representation as a string
+     */
+    public static final String toBase64(byte[] data) {
+        final char[] out = new char[encodedLength(data.length)];
+        toBase64(data, 0, data.length, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * Returns the number of characters needed to represent the given number of bytes in base64
+     * (without any trailing padding).
+     */
+    public static int encodedLength(int length) {
+        return (length * 4 + 2) / 3;
+    }
+
+    /**
+     * Converts a range of a byte array into its base64 representation (skipping any trailing
+     * padding), writing the result directly into the provided character buffer.
+     * 
+     * @param data
+     *            the data to convert
+     * @param offset
+     *            the offset of the first byte to convert
+     * @param length
+     *            the number of bytes to convert
+     * @param out
+     *            the buffer receiving the base64 characters
+     * @param outOffset
+     *            the offset at which the first character is written
+     * @return the number of characters written
+     */
+    public static int toBase64(byte[] data, int offset, int length, char[] out, int outOffset) {
+        int in = offset;
+        int pos = outOffset;
+        final int end = offset + length;
+        while (end - in >= 3) {
+            final int bits = (data[in++] & 0xff) << 16 | (data[in++] & 0xff) << 8 | data[in++] & 0xff;
+            out[pos++] = ALPHABET[bits >>> 18];
+            out[pos++] = ALPHABET[bits >>> 12 & 0x3f];
+            out[pos++] = ALPHABET[bits >>> 6 & 0x3f];
+            out[pos++] = ALPHABET[bits & 0x3f];
+        }
+        if (end - in == 2) {
+            final int bits = (data[in++] & 0xff) << 16 | (data[in] & 0xff) << 8;
+            out[pos++] = ALPHABET[bits >>> 18];
+            out[pos++] = ALPHABET[bits >>> 12 & 0x3f];
+            out[pos++] = ALPHABET[bits >>> 6 & 0x3f];
+        } else if (end - in == 1) {
+            final int bits = (data[in] & 0xff) << 16;
+            out[pos++] = ALPHABET[bits >>> 18];
+            out[pos++] = ALPHABET[bits >>> 12 & 0x3f];
+        }
+        return pos - outOffset;
+    }
+
+    /**
+     * Converts a sequence of equally sized records (e.g. digests) into their base64
+     * representations (skipping any trailing padding). The representations are written back to back
+     * into the provided character buffer, each of them taking {@link #encodedLength(int)
+     * encodedLength(recordLength)} characters.
+     * 
+     * @param data
+     *            the records to convert
+     * @param offset
+     *            the offset of the first record
+     * @param recordLength
+     *            the length of a single record in bytes
+     * @param count
+     *            the number of records to convert
+     * @param out
+     *            the buffer receiving the base64 characters
+     * @param outOffset
+     *            the offset at which the first character is written
+     * @return the number of characters written
+     */
+    public static int toBase64(byte[] data, int offset, int recordLength, int count, char[] out,
+            int outOffset) {
+        int pos = outOffset;
+        for (int ii = 0; ii < count; ii++) {
+            pos += toBase64(data, offset + ii * recordLength, recordLength, out, pos);
+        }
+        return pos - outOffset;
+    }
+}
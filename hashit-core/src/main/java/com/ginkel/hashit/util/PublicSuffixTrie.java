@@ -0,0 +1,200 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * A precompiled trie of the rules of the <a href="https://publicsuffix.org/">public suffix
+ * list</a>, which is used to find the registrable part of host names.
+ * <p>
+ * The trie is read directly from its binary representation, which may be memory-mapped. All
+ * numbers are big-endian:
+ * 
+ * <pre>
+ * int    MAGIC
+ * int    length of the label pool
+ * byte[] label pool (UTF-8)
+ * node   root, followed by all other nodes
+ * </pre>
+ * 
+ * A node consists of a flag byte ({@link #RULE}, {@link #WILDCARD}, {@link #EXCEPTION}), the
+ * number of children as an unsigned short and the children sorted by their labels (as unsigned
+ * bytes), each given by the offset of its label in the pool (int), the label length (unsigned byte)
+ * and the offset of its node relative to the root (int). The labels of a rule are stored from right
+ * to left, i.e. the children of the root are the top-level domains.
+ */
+public final class PublicSuffixTrie {
+    public static final int MAGIC = 0x50534c31; // PSL1
+
+    /** The node terminates a rule, e.g. <code>co.uk</code> */
+    public static final int RULE = 1;
+    /** All children of the node are public suffixes, e.g. <code>*.ck</code> */
+    public static final int WILDCARD = 2;
+    /** The node terminates an exception rule, e.g. <code>!www.ck</code> */
+    public static final int EXCEPTION = 4;
+
+    /** The size of a child entry in bytes */
+    public static final int CHILD_SIZE = 9;
+
+    private final ByteBuffer data;
+    private final int labels;
+    private final int root;
+
+    /**
+     * Creates a trie backed by the provided buffer, which must not be modified afterwards.
+     */
+    public PublicSuffixTrie(ByteBuffer data) {
+        this.data = data;
+        if (data.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a public suffix trie");
+        labels = 8;
+        root = labels + data.getInt(4);
+    }
+
+    /**
+     * Reads a trie from the provided stream, which is left open.
+     */
+    public static PublicSuffixTrie read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * 1024);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+            out.write(buffer, 0, read);
+        return new PublicSuffixTrie(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Returns the label directly in front of the host's public suffix, e.g. <code>example</code>
+     * for <code>www.example.com.au</code> or <code>foo</code> for <code>foo.github.io</code>.
+     * IP addresses are returned as they are.
+     * 
+     * @return the registrable label or <code>null</code> if the host is a public suffix itself
+     */
+    public String getRegistrableLabel(String host) {
+        String name = host.toLowerCase(Locale.ENGLISH);
+        if (name.endsWith("."))
+            name = name.substring(0, name.length() - 1);
+        if (name.length() == 0 || name.indexOf(':') >= 0 || isNumeric(name))
+            return name.length() == 0 ? null : name;
+
+        final byte[] bytes;
+        try {
+            bytes = name.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+
+        // walk the labels from right to left, keeping track of the longest public suffix
+        int suffixStart = -1; // the start of the public suffix within the host
+        int node = root;
+        int end = bytes.length;
+        while (end > 0) {
+            int start = end - 1;
+            while (start >= 0 && bytes[start] != '.')
+                start--;
+            start++;
+            if (start == end)
+                return null; // empty label
+
+            final int child = findChild(node, bytes, start, end);
+            final int flags = child < 0 ? 0 : data.get(child);
+            if ((flags & EXCEPTION) != 0) {
+                // the exception's label is registrable itself
+                suffixStart = end + 1;
+                break;
+            }
+            if ((data.get(node) & WILDCARD) != 0)
+                suffixStart = start;
+            if ((flags & RULE) != 0)
+                suffixStart = start;
+            if (suffixStart < 0)
+                suffixStart = start; // the implicit "*" rule
+            if (child < 0)
+                break;
+            node = child;
+            end = start - 1;
+        }
+
+        if (suffixStart <= 1)
+            return null;
+        int labelStart = suffixStart - 2;
+        while (labelStart >= 0 && bytes[labelStart] != '.')
+            labelStart--;
+        labelStart++;
+        try {
+            return new String(bytes, labelStart, suffixStart - 1 - labelStart, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        }
+    }
+
+    /**
+     * Binary searches the children of a node for a label.
+     * 
+     * @return the offset of the child's node or <code>-1</code> if there is no such child
+     */
+    private int findChild(int node, byte[] label, int start, int end) {
+        int low = 0;
+        int high = data.getShort(node + 1) & 0xffff;
+        final int children = node + 3;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int entry = children + mid * CHILD_SIZE;
+            final int cmp = compare(data.getInt(entry), data.get(entry + 4) & 0xff, label, start,
+                    end);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid;
+            else
+                return root + data.getInt(entry + 5);
+        }
+        return -1;
+    }
+
+    private int compare(int offset, int length, byte[] label, int start, int end) {
+        final int pos = labels + offset;
+        final int n = Math.min(length, end - start);
+        for (int ii = 0; ii < n; ii++) {
+            final int diff = (data.get(pos + ii) & 0xff) - (label[start + ii] & 0xff);
+            if (diff != 0)
+                return diff;
+        }
+        return length - (end - start);
+    }
+
+    private static boolean isNumeric(String name) {
+        // IPv4 addresses, which would otherwise be mistaken for the "*" rule
+        final int lastDot = name.lastIndexOf('.');
+        for (int ii = lastDot + 1; ii < name.length(); ii++) {
+            final char c = name.charAt(ii);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+}
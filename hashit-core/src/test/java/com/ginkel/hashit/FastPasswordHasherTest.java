@@ -0,0 +1,125 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import com.ginkel.hashit.engine.HashEngines;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link FastPasswordHasher} and {@link BatchHasher} against hash words produced by the
+ * original string-based algorithm, covering every requirement and restriction as well as the
+ * largest hash word size.
+ */
+public class FastPasswordHasherTest {
+    private static final String LONG_SITE_TAG = repeat('x', 100);
+    private static final String LONG_MASTER_KEY = repeat('y', 80);
+
+    private static final Vector[] VECTORS = {
+            new Vector("example.com", "master",
+                    new HashParameters(8, true, true, true, false, false), "ZdOy0/mH"),
+            new Vector("gmail", "correct horse battery staple",
+                    new HashParameters(12, true, true, true, false, false), "3tteO!SMkEyl"),
+            new Vector("amazon", "s3cr3t",
+                    new HashParameters(16, true, true, true, true, false), "SswAPprTwvL4KNpC"),
+            new Vector("bank:1", "pin",
+                    new HashParameters(6, false, false, false, false, true), "140245"),
+            new Vector("github", "hunter2",
+                    new HashParameters(26, false, false, false, false, false),
+                    "HOd1rUC5BGhlPqloN3vLXF2FFP"),
+            new Vector("a", "b",
+                    new HashParameters(4, true, true, true, false, false), "&Fv5"),
+            new Vector("paypal", "master",
+                    new HashParameters(10, true, false, true, true, false), "HgKAf6nIRJ"),
+            new Vector(LONG_SITE_TAG, LONG_MASTER_KEY,
+                    new HashParameters(20, true, true, false, false, false),
+                    "LjAKMvkckXonTDy3,a7B"),
+    };
+
+    @Test
+    public void matchesLegacyHashWords() {
+        for (Vector vector : VECTORS) {
+            final HashParameters p = vector.parameters;
+            assertEquals(vector.siteTag, vector.expected, FastPasswordHasher.hashPassword(
+                    vector.siteTag, vector.masterKey, p.getHashWordSize(), p.isRequireDigit(),
+                    p.isRequirePunctuation(), p.isRequireMixedCase(), p.isRestrictSpecial(),
+                    p.isRestrictDigits()));
+        }
+    }
+
+    @Test
+    public void batchMatchesLegacyHashWords() {
+        for (Vector vector : VECTORS) {
+            assertEquals(vector.siteTag, vector.expected, PasswordHasher.batch(vector.masterKey)
+                    .hashPassword(vector.siteTag, vector.parameters));
+            assertEquals(vector.siteTag, vector.expected, PasswordHasher.batch(
+                    vector.masterKey.toCharArray(), HashEngines.newHmacSha1())
+                    .hashPassword(vector.siteTag, vector.parameters));
+        }
+    }
+
+    @Test
+    public void batchWritesIntoBuffer() {
+        final Vector vector = VECTORS[1];
+        final BatchHasher batch = PasswordHasher.batch(vector.masterKey,
+                HashEngines.newHmacSha1());
+        final char[] hashWord = new char[20];
+        final int length = batch.hashPassword(vector.siteTag, vector.parameters, hashWord, 3);
+        assertEquals(vector.expected.length(), length);
+        assertEquals(vector.expected, new String(hashWord, 3, length));
+    }
+
+    @Test
+    public void batchReusesSession() {
+        final BatchHasher batch = PasswordHasher.batch("master", HashEngines.newHmacSha1());
+        final List<BatchHasher.Request> requests = new ArrayList<BatchHasher.Request>();
+        requests.add(new BatchHasher.Request("example.com", VECTORS[0].parameters));
+        requests.add(new BatchHasher.Request("paypal", VECTORS[6].parameters));
+        requests.add(new BatchHasher.Request("example.com", VECTORS[0].parameters));
+        assertEquals(Arrays.asList("ZdOy0/mH", "HgKAf6nIRJ", "ZdOy0/mH"),
+                batch.hashPasswords(requests));
+    }
+
+    private static String repeat(char c, int count) {
+        final char[] result = new char[count];
+        Arrays.fill(result, c);
+        return new String(result);
+    }
+
+    private static final class Vector {
+        final String siteTag;
+        final String masterKey;
+        final HashParameters parameters;
+        final String expected;
+
+        Vector(String siteTag, String masterKey, HashParameters parameters, String expected) {
+            this.siteTag = siteTag;
+            this.masterKey = masterKey;
+            this.parameters = parameters;
+            this.expected = expected;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks {@link PrivateTagCache} against private tags derived by the original algorithm, which
+ * hashes the seed with the site tag as the key.
+ */
+public class PrivateTagCacheTest {
+    private static final String SEED = "7f3c9a1e-5b2d-4c8e-9f6a-0d1b2c3e4f5a";
+
+    @Test
+    public void derivesLegacyPrivateTags() {
+        final PrivateTagCache cache = new PrivateTagCache();
+        assertEquals("9UNxFo0FOk/0E49DpCVuB+qR", cache.getPrivateTag(SEED, "example.com"));
+        assertEquals("#5sRwnX7LUEc61QMhsboAJIh", cache.getPrivateTag("secret seed", "gmail"));
+        assertEquals("/n3ZN+zku5gjJcdwb9MUNnH+", cache.getPrivateTag("secret seed", "compatible"));
+    }
+
+    @Test
+    public void cachesPrivateTags() {
+        final PrivateTagCache cache = new PrivateTagCache();
+        assertSame(cache.getPrivateTag(SEED, "example.com"),
+                cache.getPrivateTag(SEED, "example.com"));
+    }
+
+    @Test
+    public void startsOverWithAnotherSeed() {
+        final PrivateTagCache cache = new PrivateTagCache(1);
+        cache.getPrivateTag(SEED, "gmail");
+        assertEquals("#5sRwnX7LUEc61QMhsboAJIh", cache.getPrivateTag("secret seed", "gmail"));
+        assertEquals("9UNxFo0FOk/0E49DpCVuB+qR", cache.getPrivateTag(SEED, "example.com"));
+    }
+}
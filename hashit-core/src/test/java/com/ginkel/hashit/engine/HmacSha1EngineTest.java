@@ -0,0 +1,107 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.engine;
+
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks {@link HmacSha1Engine} against the JCA "HmacSHA1" MAC around the block boundaries of
+ * SHA-1: keys up to, at and beyond the block size, and messages whose padding just fits into the
+ * last block, spills into another one or spans several blocks.
+ */
+public class HmacSha1EngineTest {
+    private static final int[] KEY_LENGTHS = {0, 1, 20, 63, 64, 65, 100, 200};
+    private static final int[] MESSAGE_LENGTHS = {0, 1, 55, 56, 63, 64, 65, 119, 120, 128, 1000};
+
+    private final Random random = new Random(4711);
+
+    @Test
+    public void matchesJca() throws Exception {
+        for (int keyLength : KEY_LENGTHS) {
+            for (int messageLength : MESSAGE_LENGTHS) {
+                assertMatches(random(keyLength), random(messageLength));
+            }
+        }
+    }
+
+    @Test
+    public void matchesJcaWithOffsets() throws Exception {
+        final byte[] key = random(80);
+        final byte[] message = random(130);
+        final HashEngine engine = new HmacSha1Engine();
+        engine.init(key, 3, 70);
+        final byte[] actual = new byte[25];
+        engine.digest(message, 5, 120, actual, 5);
+
+        final byte[] expected = new byte[25];
+        System.arraycopy(jca(copy(key, 3, 70), copy(message, 5, 120)), 0, expected, 5, 20);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void rekeys() throws Exception {
+        final HashEngine engine = new HmacSha1Engine();
+        for (int keyLength : KEY_LENGTHS) {
+            final byte[] key = random(keyLength);
+            engine.init(key, 0, key.length);
+            for (int messageLength : MESSAGE_LENGTHS) {
+                final byte[] message = random(messageLength);
+                final byte[] actual = new byte[engine.getDigestLength()];
+                engine.digest(message, 0, message.length, actual, 0);
+                assertArrayEquals(jca(key, message), actual);
+            }
+        }
+    }
+
+    private void assertMatches(byte[] key, byte[] message) throws Exception {
+        final HashEngine engine = new HmacSha1Engine();
+        engine.init(key, 0, key.length);
+        final byte[] actual = new byte[engine.getDigestLength()];
+        engine.digest(message, 0, message.length, actual, 0);
+        assertArrayEquals(String.format("key length %d, message length %d", key.length,
+                message.length), jca(key, message), actual);
+    }
+
+    private static byte[] jca(byte[] key, byte[] message) throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA1");
+        // the JCA rejects empty keys, but HMAC pads any key with zeros to the block size anyway
+        mac.init(new SecretKeySpec(key.length == 0 ? new byte[64] : key, "HmacSHA1"));
+        return mac.doFinal(message);
+    }
+
+    private byte[] random(int length) {
+        final byte[] result = new byte[length];
+        random.nextBytes(result);
+        return result;
+    }
+
+    private static byte[] copy(byte[] data, int offset, int length) {
+        final byte[] result = new byte[length];
+        System.arraycopy(data, offset, result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link Base64} against the test vectors of RFC 4648, minus their padding.
+ */
+public class Base64Test {
+    private static final String[][] VECTORS = {
+            {"", ""},
+            {"f", "Zg"},
+            {"fo", "Zm8"},
+            {"foo", "Zm9v"},
+            {"foob", "Zm9vYg"},
+            {"fooba", "Zm9vYmE"},
+            {"foobar", "Zm9vYmFy"},
+    };
+
+    @Test
+    public void encodesRfcVectors() throws Exception {
+        for (String[] vector : VECTORS) {
+            assertEquals(vector[1], Base64.toBase64(vector[0].getBytes("US-ASCII")));
+            assertEquals(vector[1].length(), Base64.encodedLength(vector[0].length()));
+        }
+    }
+
+    @Test
+    public void encodesHighBytes() {
+        assertEquals("//79", Base64.toBase64(new byte[] {(byte) 0xff, (byte) 0xfe, (byte) 0xfd}));
+        assertEquals("AAE", Base64.toBase64(new byte[] {0, 1}));
+    }
+
+    @Test
+    public void encodesRange() throws Exception {
+        final byte[] data = "xxfoobaryy".getBytes("US-ASCII");
+        final char[] out = new char[12];
+        final int length = Base64.toBase64(data, 2, 5, out, 3);
+        assertEquals(7, length);
+        assertEquals("Zm9vYmE", new String(out, 3, length));
+    }
+
+    @Test
+    public void encodesRecords() throws Exception {
+        final byte[] data = "-foobafoobafooba".getBytes("US-ASCII");
+        final char[] out = new char[21];
+        final int length = Base64.toBase64(data, 1, 5, 3, out, 0);
+        assertEquals(21, length);
+        assertEquals("Zm9vYmEZm9vYmEZm9vYmE", new String(out));
+    }
+}
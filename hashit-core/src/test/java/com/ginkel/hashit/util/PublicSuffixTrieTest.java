@@ -0,0 +1,90 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks {@link PublicSuffixTrie} against the trie the application ships, covering plain,
+ * wildcard and exception rules as well as hosts that are public suffixes themselves.
+ */
+public class PublicSuffixTrieTest {
+    /** The compiled list in the application's assets, relative to this module */
+    private static final String TRIE_FILE = "../src/main/assets/public_suffixes.bin";
+
+    private static PublicSuffixTrie trie;
+
+    @BeforeClass
+    public static void readTrie() throws IOException {
+        final InputStream in = new FileInputStream(TRIE_FILE);
+        try {
+            trie = PublicSuffixTrie.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void findsRegistrableLabels() {
+        assertEquals("example", trie.getRegistrableLabel("www.example.com"));
+        assertEquals("example", trie.getRegistrableLabel("www.example.com.au"));
+        assertEquals("example", trie.getRegistrableLabel("example.co.uk"));
+        assertEquals("foo", trie.getRegistrableLabel("foo.github.io"));
+        assertEquals("example", trie.getRegistrableLabel("example.xn--fiqs8s"));
+    }
+
+    @Test
+    public void appliesWildcardsAndExceptions() {
+        // *.ck and !www.ck
+        assertEquals("foo", trie.getRegistrableLabel("foo.bar.ck"));
+        assertNull(trie.getRegistrableLabel("bar.ck"));
+        assertEquals("www", trie.getRegistrableLabel("www.ck"));
+        // *.kawasaki.jp and !city.kawasaki.jp
+        assertEquals("b", trie.getRegistrableLabel("a.b.c.kawasaki.jp"));
+        assertNull(trie.getRegistrableLabel("www.kawasaki.jp"));
+        assertEquals("city", trie.getRegistrableLabel("city.kawasaki.jp"));
+    }
+
+    @Test
+    public void rejectsPublicSuffixes() {
+        assertNull(trie.getRegistrableLabel("com"));
+        assertNull(trie.getRegistrableLabel("co.uk"));
+        // the implicit "*" rule
+        assertNull(trie.getRegistrableLabel("localhost"));
+        assertNull(trie.getRegistrableLabel("a..com"));
+        assertNull(trie.getRegistrableLabel(""));
+    }
+
+    @Test
+    public void normalizesHosts() {
+        assertEquals("example", trie.getRegistrableLabel("WWW.Example.COM."));
+        assertEquals("192.168.0.1", trie.getRegistrableLabel("192.168.0.1"));
+        assertEquals("[::1]", trie.getRegistrableLabel("[::1]"));
+    }
+}
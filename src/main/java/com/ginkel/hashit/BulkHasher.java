@@ -0,0 +1,138 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import com.ginkel.hashit.engine.HashEngines;
+import com.ginkel.hashit.util.HistoryManager;
+import com.ginkel.hashit.util.SeedHelper;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static com.ginkel.hashit.Constants.*;
+
+/**
+ * Regenerates the hash words of many site tags at once, spreading the work across all available
+ * cores. Each site tag is hashed using its own site-specific parameters, just like
+ * {@link PasswordActivity} would do.
+ * <p>
+ * Private site tags are derived through the application's {@link PrivateTagCache}. They hash the
+ * seed with the site tag as the key, so unlike the master key, the seed cannot key a session that
+ * is shared by all site tags.
+ */
+public class BulkHasher {
+    private final Context ctx;
+    private final SharedPreferences settings;
+    private final int threads;
+    private final HashProfileCache profiles;
+
+    /**
+     * Receives the hash words as soon as they have been computed. Invocations are serialized, but
+     * do not happen in any particular order and not on the thread that started the operation.
+     */
+    public interface Listener {
+        void onHashed(String siteTag, String hashWord);
+    }
+
+    public BulkHasher(Context ctx) {
+        this(ctx, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkHasher(Context ctx, int threads) {
+        this.ctx = ctx.getApplicationContext();
+        this.settings = PreferenceManager.getDefaultSharedPreferences(this.ctx);
+        this.threads = Math.max(1, threads);
+        this.profiles = HashItApplication.getApp(this.ctx).getHashProfiles();
+    }
+
+    /**
+     * Collects all site tags known to the application, i.e. those from the site tag history and
+     * those mapped to host names.
+     */
+    public Set<String> getKnownSiteTags() {
+        Set<String> result = new LinkedHashSet<String>(HistoryManager.load(ctx, SITE_TAGS));
+        result.addAll(HashItApplication.getApp(ctx).getSiteMappings().getSiteTags());
+        return result;
+    }
+
+    /**
+     * Hashes all known site tags.
+     *
+     * @see #hashAll(String, Collection, Listener)
+     */
+    public void hashAll(String masterKey, Listener listener) throws InterruptedException {
+        hashAll(masterKey, getKnownSiteTags(), listener);
+    }
+
+    /**
+     * Hashes the provided site tags using the given master key and passes the results to the
+     * listener. Blocks until all site tags have been processed.
+     */
+    public void hashAll(final String masterKey, Collection<String> siteTags, final Listener listener)
+            throws InterruptedException {
+        final String[] tags = siteTags.toArray(new String[siteTags.size()]);
+        final int stripes = Math.min(threads, tags.length);
+        if (stripes == 0)
+            return;
+
+        // create the seed (if necessary) before the stripes need it
+        SeedHelper.getSeed(settings);
+        ExecutorService executor = Executors.newFixedThreadPool(stripes);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(stripes);
+            for (int ii = 0; ii < stripes; ii++) {
+                final int first = ii;
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        // sessions are not thread-safe, so each stripe keeps its own ones
+                        Map<String, BatchHasher> hashers = new HashMap<String, BatchHasher>();
+                        for (int jj = first; jj < tags.length; jj += stripes) {
+                            HashProfile profile = profiles.get(tags[jj], false);
+                            String engine = profile.getEngine();
+                            BatchHasher hasher = hashers.get(engine);
+                            if (hasher == null) {
+                                hashers.put(engine, hasher = PasswordHasher.batch(masterKey,
+                                        HashEngines.forName(engine)));
+                            }
+                            String hash = hasher.hashPassword(profile.getHashTag(),
+                                    profile.getParameters());
+                            synchronized (listener) {
+                                listener.onHashed(tags[jj], hash);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Failed to hash site tags", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
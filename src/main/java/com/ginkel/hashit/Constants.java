@@ -38,6 +38,7 @@ public interface Constants {
     final String STATE_WELCOME_DISPLAYED = "WelcomeScreenDisplayed";
 
     final String SITE_TAGS = "SiteTags";
+    final String HISTORY_COMPACTED = "HistoryCompacted";
     final String ENABLE_HISTORY = "EnableHistory";
     final String AUTO_EXIT = "AutoExit";
     final String CACHE_DURATION = "CacheDuration";
@@ -50,6 +51,9 @@ public interface Constants {
 
     final String DISABLE_CLIPBOARD = "DisableClipboard";
 
+    final String HASH_ENGINE = "HashEngine";
+    final String KDF_ITERATIONS = "KdfIterations";
+
     final String APP_VERSION = "AppVersion";
     final String CREATION_DATE = "CreationDate";
 
@@ -22,10 +22,26 @@ package com.ginkel.hashit;
 
 import android.app.Application;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.preference.PreferenceManager;
 import android.util.Log;
 import com.ginkel.hashit.util.HistoryManager;
+import com.ginkel.hashit.util.PublicSuffixTrie;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * The Hash It! Application. Used to sync the site tag between different activities.
@@ -33,8 +49,49 @@ import com.ginkel.hashit.util.HistoryManager;
  * @author Thilo-Alexander Ginkel
  */
 public class HashItApplication extends Application {
+    private static final String PUBLIC_SUFFIXES_ASSET = "public_suffixes.bin";
+
     private String siteTag;
-    private HistoryManager siteTagHistory;
+    private final Handler handler = new Handler();
+    private final FutureTask<HistoryManager> siteTagHistory = new FutureTask<HistoryManager>(
+            new Callable<HistoryManager>() {
+                public HistoryManager call() {
+                    return new HistoryManager(HashItApplication.this, Constants.SITE_TAGS,
+                            R.layout.autocomplete_list);
+                }
+            }) {
+        @Override
+        protected void done() {
+            handler.post(new Runnable() {
+                public void run() {
+                    runHistoryListeners();
+                }
+            });
+        }
+    };
+    private final List<Runnable> historyListeners = new ArrayList<Runnable>();
+    private final PrivateTagCache privateTags = new PrivateTagCache();
+    private PublicSuffixTrie publicSuffixes;
+    private SiteMappings siteMappings;
+    private SiteProfiles siteProfiles;
+    private HashProfileCache hashProfiles;
+    // strongly referenced, as SharedPreferences only keeps weak references to its listeners
+    private final OnSharedPreferenceChangeListener seedListener = new OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            if (Constants.SEED.equals(key))
+                privateTags.clear();
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .registerOnSharedPreferenceChangeListener(seedListener);
+
+        // load the history while the first activity is starting up
+        new Thread(siteTagHistory, "HistoryLoader").start();
+    }
 
     public static HashItApplication getApp(Context ctx) {
         return (HashItApplication) ctx.getApplicationContext();
@@ -55,12 +112,118 @@ public class HashItApplication extends Application {
             return null;
     }
 
+    /**
+     * Returns the site tag history, waiting for it to be loaded if necessary.
+     */
     protected HistoryManager getHistoryManager() {
-        return siteTagHistory;
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return siteTagHistory.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load the site tag history", e.getCause());
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the given listener on the UI thread once the site tag history has been loaded, which
+     * may be right away.
+     */
+    protected void whenHistoryLoaded(Runnable listener) {
+        synchronized (historyListeners) {
+            if (!siteTagHistory.isDone()) {
+                historyListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private void runHistoryListeners() {
+        final List<Runnable> listeners;
+        synchronized (historyListeners) {
+            listeners = new ArrayList<Runnable>(historyListeners);
+            historyListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
     }
 
-    protected void setHistoryManager(HistoryManager historyManager) {
-        siteTagHistory = historyManager;
+    /**
+     * Returns the cache of private site tags, which is cleared whenever the seed changes.
+     */
+    protected PrivateTagCache getPrivateTagCache() {
+        return privateTags;
+    }
+
+    /**
+     * Returns the mappings of host names to site tags, which are loaded on first access.
+     */
+    protected synchronized SiteMappings getSiteMappings() {
+        if (siteMappings == null) {
+            siteMappings = new SiteMappings(this);
+        }
+        return siteMappings;
+    }
+
+    /**
+     * Returns the site-specific preferences of all sites, which are loaded on first access.
+     */
+    protected synchronized SiteProfiles getSiteProfiles() {
+        if (siteProfiles == null) {
+            siteProfiles = new SiteProfiles(this);
+        }
+        return siteProfiles;
+    }
+
+    /**
+     * Returns the cache of resolved hash profiles, which is created on first access.
+     */
+    protected synchronized HashProfileCache getHashProfiles() {
+        if (hashProfiles == null) {
+            hashProfiles = new HashProfileCache(this);
+        }
+        return hashProfiles;
+    }
+
+    /**
+     * Returns the public suffix trie used to derive site tags from host names, loading it on
+     * first use.
+     */
+    protected synchronized PublicSuffixTrie getPublicSuffixes() throws IOException {
+        if (publicSuffixes == null) {
+            publicSuffixes = loadPublicSuffixes();
+        }
+        return publicSuffixes;
+    }
+
+    private PublicSuffixTrie loadPublicSuffixes() throws IOException {
+        try {
+            // assets stored uncompressed can be mapped directly from the APK
+            AssetFileDescriptor fd = getAssets().openFd(PUBLIC_SUFFIXES_ASSET);
+            try {
+                return new PublicSuffixTrie(fd.createInputStream().getChannel().map(
+                        FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getLength()));
+            } finally {
+                fd.close();
+            }
+        } catch (FileNotFoundException e) {
+            InputStream in = getAssets().open(PUBLIC_SUFFIXES_ASSET);
+            try {
+                return PublicSuffixTrie.read(in);
+            } finally {
+                in.close();
+            }
+        }
     }
 
     protected PackageInfo getPackageInfo() {
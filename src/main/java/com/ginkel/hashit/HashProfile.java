@@ -0,0 +1,56 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+/**
+ * The fully resolved hash settings of a site tag: the tag actually fed into the hash (i.e. the
+ * private site tag unless in compatibility mode), the hash engine and the hash word parameters.
+ * Instances are immutable.
+ */
+final class HashProfile {
+    private final String hashTag;
+    private final boolean compatibility;
+    private final String engine;
+    private final HashParameters parameters;
+
+    HashProfile(String hashTag, boolean compatibility, String engine, HashParameters parameters) {
+        this.hashTag = hashTag;
+        this.compatibility = compatibility;
+        this.engine = engine;
+        this.parameters = parameters;
+    }
+
+    String getHashTag() {
+        return hashTag;
+    }
+
+    boolean isCompatibility() {
+        return compatibility;
+    }
+
+    String getEngine() {
+        return engine;
+    }
+
+    HashParameters getParameters() {
+        return parameters;
+    }
+}
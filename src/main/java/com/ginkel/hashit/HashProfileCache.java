@@ -0,0 +1,146 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.preference.PreferenceManager;
+import com.ginkel.hashit.engine.HashEngines;
+import com.ginkel.hashit.util.SeedHelper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.ginkel.hashit.Constants.COMPATIBILITY_PREFIX;
+
+/**
+ * A bounded LRU cache of {@link HashProfile}s by site tag (as entered, i.e. including the
+ * compatibility prefix), so that hashing a known site does not resolve its parameters again.
+ * <p>
+ * A profile depends on the global settings (including the seed) and on the profile of its site.
+ * Any change of the former drops all cached profiles, a change of the latter the profiles of that
+ * site. Instances are thread-safe.
+ */
+final class HashProfileCache implements OnSharedPreferenceChangeListener {
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static final class Entry {
+        final HashProfile profile;
+        /** The site profile the hash profile was resolved from */
+        final SharedPreferences site;
+
+        Entry(HashProfile profile, SharedPreferences site) {
+            this.profile = profile;
+            this.site = site;
+        }
+    }
+
+    private final HashItApplication app;
+    private final SharedPreferences settings;
+    private final Map<String, Entry> entries;
+    /** Incremented on every invalidation, so that stale resolutions are not cached */
+    private int generation;
+
+    HashProfileCache(Context ctx) {
+        this(ctx, DEFAULT_CAPACITY);
+    }
+
+    HashProfileCache(Context ctx, final int capacity) {
+        app = HashItApplication.getApp(ctx);
+        settings = PreferenceManager.getDefaultSharedPreferences(app);
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        settings.registerOnSharedPreferenceChangeListener(this);
+        app.getSiteProfiles().registerOnSharedPreferenceChangeListener(this);
+    }
+
+    /**
+     * Returns the hash profile of a site tag, resolving (and caching) it if necessary.
+     * 
+     * @param create
+     *            whether to create the profile of a new site, pinning its hash engine, or to only
+     *            resolve it without caching the result
+     */
+    HashProfile get(String siteTag, boolean create) {
+        final int resolving;
+        synchronized (this) {
+            final Entry entry = entries.get(siteTag);
+            if (entry != null)
+                return entry.profile;
+            resolving = generation;
+        }
+
+        // resolve outside the lock, as deriving the private site tag costs a full hash
+        String tag = siteTag;
+        boolean compatibility = tag.startsWith(COMPATIBILITY_PREFIX);
+        if (compatibility) {
+            tag = tag.substring(COMPATIBILITY_PREFIX.length());
+        }
+        final SharedPreferences site = SiteParameters.getSitePreferences(app, tag);
+        if (!compatibility) {
+            compatibility = SiteParameters.isCompatibilityMode(site, settings);
+        }
+        boolean cache = true;
+        if (!compatibility && site.getAll().isEmpty()) {
+            if (create) {
+                /*
+                 * pin HMAC-SHA1, as the site may well have been hashed with it before; any other
+                 * engine must be picked explicitly in the site's parameters
+                 */
+                SiteParameters.createProfile(site, HashEngines.HMAC_SHA1, app.getVersion());
+                return get(siteTag, false);
+            }
+            cache = false;
+        }
+        if (!compatibility) {
+            tag = app.getPrivateTagCache().getPrivateTag(SeedHelper.getSeed(settings), tag);
+        }
+        final HashProfile profile = new HashProfile(tag, compatibility,
+                SiteParameters.getHashEngine(site, compatibility),
+                SiteParameters.getHashParameters(site, settings));
+
+        if (cache) {
+            synchronized (this) {
+                if (generation == resolving)
+                    entries.put(siteTag, new Entry(profile, site));
+            }
+        }
+        return profile;
+    }
+
+    public synchronized void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        generation++;
+        if (prefs == settings) {
+            entries.clear();
+            return;
+        }
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().site.equals(prefs))
+                it.remove();
+        }
+    }
+}
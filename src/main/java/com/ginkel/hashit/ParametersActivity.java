@@ -27,6 +27,7 @@ import android.os.Bundle;
 import android.preference.*;
 import android.preference.Preference.OnPreferenceChangeListener;
 import android.preference.Preference.OnPreferenceClickListener;
+import com.ginkel.hashit.engine.HashEngines;
 
 /**
  * An {@link Activity} for the site-specific hash settings.
@@ -47,6 +48,20 @@ public class ParametersActivity extends PreferenceActivity {
      */
     private static final String[] DEPS_RESTRICT_SPECIAL_CHARS = {Constants.REQUIRE_PUNCTUATION};
 
+    /** The site tag whose profile is being edited, if any */
+    private String editedSiteTag;
+
+    /**
+     * Writes every change made in the editing buffer through to the edited site profile.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener profileWriter =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            HashItApplication.getApp(ParametersActivity.this).getSiteProfiles()
+                    .copyFrom(editedSiteTag, prefs);
+        }
+    };
+
     /**
      * @see android.preference.PreferenceActivity#onCreate(android.os.Bundle)
      */
@@ -63,9 +78,15 @@ public class ParametersActivity extends PreferenceActivity {
         PreferenceManager prefManager = getPreferenceManager();
 
         Intent intent = getIntent();
-        if (Constants.ACTION_SITE_PREFS.equals(intent.getAction())) {
+        final boolean sitePrefs = Constants.ACTION_SITE_PREFS.equals(intent.getAction());
+        if (sitePrefs) {
+            /* site profiles live in a single store, so edit a copy in a preferences file */
             HashItApplication app = (HashItApplication) getApplication();
-            prefManager.setSharedPreferencesName(HashItApplication.normalizeSiteTag(app.getSiteTag()));
+            editedSiteTag = String.valueOf(app.getSiteTag());
+            prefManager.setSharedPreferencesName(SiteProfiles.EDITOR_PREFS_NAME);
+            app.getSiteProfiles().copyTo(editedSiteTag, prefManager.getSharedPreferences());
+            prefManager.getSharedPreferences().registerOnSharedPreferenceChangeListener(
+                    profileWriter);
         }
 
         /*
@@ -76,22 +97,20 @@ public class ParametersActivity extends PreferenceActivity {
             prefScreen.removeAll();
         }
 
+        SharedPreferences defaults = PreferenceManager
+                .getDefaultSharedPreferences(getBaseContext());
+
         final SharedPreferences prefs = prefManager.getSharedPreferences();
         if (prefs.getAll().size() == 0) {
-            /* Record which app version these settings were created with */
-            prefs.edit()
-                    .putInt(Constants.APP_VERSION, HashItApplication.getApp(this).getVersion())
-                    .putLong(Constants.CREATION_DATE, System.currentTimeMillis())
-                    .commit();
+            /* Record which app version (and engine) these settings were created with */
+            SiteParameters.createProfile(prefs, sitePrefs ? HashEngines.HMAC_SHA1 : null,
+                    HashItApplication.getApp(this).getVersion());
         }
 
         /* make sure our preferences are based on the current site tag */
         prefScreen = prefManager.createPreferenceScreen(this);
         setPreferenceScreen(prefScreen);
 
-        SharedPreferences defaults = PreferenceManager
-                .getDefaultSharedPreferences(getBaseContext());
-
         // Requirements
         PreferenceCategory requirements = new PreferenceCategory(this);
         requirements.setTitle(R.string.Header_Requirements);
@@ -154,18 +173,75 @@ public class ParametersActivity extends PreferenceActivity {
         super.onResume();
     }
 
-    protected void populateSecurityCategory(PreferenceCategory security, SharedPreferences defaults) {
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        if (editedSiteTag != null) {
+            getPreferenceManager().getSharedPreferences()
+                    .unregisterOnSharedPreferenceChangeListener(profileWriter);
+            editedSiteTag = null;
+        }
+    }
+
+    protected void populateSecurityCategory(PreferenceCategory security,
+                                            final SharedPreferences defaults) {
         Preference pref = addCheckBoxPreference(security, Constants.COMPATIBILITY_MODE,
                 R.string.CheckBox_CompatibilityMode, defaults, true);
         if (defaults.getBoolean(Constants.COMPATIBILITY_MODE, true)) {
             pref.setEnabled(false);
             pref.setSummary(R.string.Summary_GlobalCompatibilityMode);
         }
+        if (editedSiteTag != null) {
+            addHashEnginePreference(security, defaults);
+        }
+    }
+
+    /**
+     * Adds the choice of the hash engine of the edited site. It is only ever changed here, as
+     * hashing with another engine yields another password.
+     */
+    private void addHashEnginePreference(PreferenceCategory security,
+                                         final SharedPreferences defaults) {
+        final SharedPreferences prefs = getPreferenceManager().getSharedPreferences();
+        final ListPreference hashEngine = new ListPreference(this);
+        hashEngine.setTitle(R.string.Label_HashEngine);
+        hashEngine.setEntries(R.array.Array_HashEngines);
+        hashEngine.setEntryValues(R.array.Array_HashEngines_Values);
+        hashEngine.setDialogTitle(R.string.Header_HashEngine);
+        /* stored by hand, as PBKDF2 is stored along with its iteration count */
+        hashEngine.setPersistent(false);
+        String engine = SiteParameters.getHashEngine(prefs, false);
+        if (engine.startsWith(HashEngines.PBKDF2_HMAC_SHA1)) {
+            engine = HashEngines.PBKDF2_HMAC_SHA1;
+        }
+        hashEngine.setValue(engine);
+        hashEngine.setOnPreferenceChangeListener(new OnPreferenceChangeListener() {
+
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                String engine = String.valueOf(newValue);
+                if (HashEngines.PBKDF2_HMAC_SHA1.equals(engine)) {
+                    engine = HashEngines.pbkdf2Name(SiteParameters.getKdfIterations(defaults));
+                }
+                prefs.edit().putString(Constants.HASH_ENGINE, engine).commit();
+                updateSummary((ListPreference) preference, newValue);
+                return true;
+            }
+        });
+        security.addPreference(hashEngine);
+        updateSummary(hashEngine, hashEngine.getValue());
     }
 
     protected ListPreference addListPreference(PreferenceCategory parent, String key,
                                                int labelResId, int dialogTitleResId, int entriesResId, int valuesResId,
                                                SharedPreferences defaults, int defaultValue) {
+        return addListPreference(parent, key, labelResId, dialogTitleResId, entriesResId,
+                valuesResId, defaults, String.valueOf(defaultValue));
+    }
+
+    protected ListPreference addListPreference(PreferenceCategory parent, String key,
+                                               int labelResId, int dialogTitleResId, int entriesResId, int valuesResId,
+                                               SharedPreferences defaults, String defaultValue) {
         ListPreference pref = new ListPreference(this);
         pref.setKey(key);
         pref.setTitle(labelResId);
@@ -174,7 +250,7 @@ public class ParametersActivity extends PreferenceActivity {
         pref.setDialogTitle(dialogTitleResId);
         Object def = defaults.getAll().get(key);
         if (def == null) {
-            def = String.valueOf(defaultValue);
+            def = defaultValue;
         }
         pref.setDefaultValue(def);
         parent.addPreference(pref);
@@ -39,18 +39,18 @@ import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.inputmethod.EditorInfo;
 import android.widget.*;
-import android.widget.TextView.BufferType;
 import android.widget.TextView.OnEditorActionListener;
 import com.ginkel.hashit.Constants.*;
+import com.ginkel.hashit.engine.HashEngines;
 import com.ginkel.hashit.util.*;
 import com.ginkel.hashit.util.cache.MemoryCacheService;
 import com.ginkel.hashit.util.cache.MemoryCacheServiceImpl;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.CharBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 import static com.ginkel.hashit.Constants.*;
 
@@ -69,17 +69,21 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
     private boolean restoredState;
     private boolean restoredSiteTag;
     private boolean welcomeDisplayed;
+    private boolean historyAttached;
+    private final Runnable attachHistory = new Runnable() {
+        public void run() {
+            if (!historyAttached && settings.getBoolean(ENABLE_HISTORY, true)) {
+                autoCompleteSiteTag.setAdapter(HashItApplication.getApp(PasswordActivity.this)
+                        .getHistoryManager().getAdapter());
+                historyAttached = true;
+            }
+        }
+    };
 
     private FocusRequest focus = FocusRequest.NONE;
 
     private SharedPreferences settings;
 
-    /**
-     * A pattern used to extract a site tag from a host name
-     */
-    private static final Pattern SITE_PATTERN = Pattern
-            .compile("^.*?([\\w\\d\\-]+)\\.((co|com|net|org|ac)\\.)?\\w+$");
-
     /**
      * Called when the activity is first created.
      */
@@ -193,7 +197,8 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
                         String host = uri.getHost();
                         originalHost = host;
 
-                        String site = settings.getString(String.format(SITE_MAP, host), null);
+                        String site = HashItApplication.getApp(this).getSiteMappings()
+                                .getSiteTag(host);
 
                         if (site != null) {
                             siteTag.setText(site);
@@ -201,9 +206,9 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
                             focus = FocusRequest.MASTER_KEY;
                         } else {
                             Log.d(LOG_TAG, "host = " + host);
-                            Matcher siteExtractor = SITE_PATTERN.matcher(host);
-                            if (siteExtractor.matches()) {
-                                site = siteExtractor.group(1);
+                            site = HashItApplication.getApp(this).getPublicSuffixes()
+                                    .getRegistrableLabel(host);
+                            if (site != null) {
                                 siteTag.setText(site);
                                 publishSiteTag(this, site);
                                 focus = FocusRequest.MASTER_KEY;
@@ -272,17 +277,22 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
 
         // Site Tag history
         autoCompleteSiteTag.setThreshold(1);
-        HistoryManager siteTagHistory;
-        if ((siteTagHistory = HashItApplication.getApp(this).getHistoryManager()) == null) {
-            HashItApplication.getApp(this).setHistoryManager(
-                    siteTagHistory = new HistoryManager(this, SITE_TAGS, R.layout.autocomplete_list));
+        autoCompleteSiteTag.setAdapter(new NullAdapter<String>(this, R.layout.autocomplete_list));
+        historyAttached = false;
+        if (SiteParameters.getBool(ENABLE_HISTORY, settings, null, true)) {
+            // attach the history once it has been loaded or the site tag is about to be entered
+            HashItApplication.getApp(this).whenHistoryLoaded(attachHistory);
+            siteTag.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+                public void onFocusChange(View v, boolean hasFocus) {
+                    if (hasFocus)
+                        attachHistory.run();
+                }
+            });
+        } else {
+            siteTag.setOnFocusChangeListener(null);
         }
-        if (getBool(ENABLE_HISTORY, settings, null, true))
-            autoCompleteSiteTag.setAdapter(siteTagHistory.getAdapter());
-        else
-            autoCompleteSiteTag.setAdapter(new NullAdapter<String>(this, R.layout.autocomplete_list));
 
-        if (getStringAsInt(CACHE_DURATION, settings, null, -1) > 0) {
+        if (SiteParameters.getStringAsInt(CACHE_DURATION, settings, null, -1) > 0) {
             final Context ctx = getApplicationContext();
             ctx.bindService(new Intent(ctx, MemoryCacheServiceImpl.class), new ServiceConnection() {
 
@@ -304,11 +314,11 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
     }
 
     @Override
-    protected void onPause() {
-        super.onPause();
+    protected void onStop() {
+        super.onStop();
 
-        // back up history
-        HashItApplication.getApp(this).getHistoryManager().save();
+        // the process may be killed from now on
+        WriteBehind.get().flush();
     }
 
     @Override
@@ -319,20 +329,6 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
             settings.unregisterOnSharedPreferenceChangeListener(this);
     }
 
-    private static boolean getBool(String key, SharedPreferences prefs, SharedPreferences defaults,
-                                   boolean def) {
-        return prefs.getBoolean(key, defaults != null ? defaults.getBoolean(key, def) : def);
-    }
-
-    /**
-     * Works around issue 2096.
-     */
-    private static int getStringAsInt(String key, SharedPreferences prefs,
-                                      SharedPreferences defaults, int def) {
-        return Integer.valueOf(prefs.getString(key, defaults != null ? defaults.getString(key,
-                String.valueOf(def)) : String.valueOf(def)));
-    }
-
     /**
      * A convenience method to forward the current site tag to the application.
      */
@@ -386,14 +382,14 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
 
         private void onDismissDialog() {
             if (dontShowAgain.isChecked()) {
-                settings.edit().putInt(HIDE_WELCOME_SCREEN, versionCode).commit();
+                WriteBehind.apply(settings.edit().putInt(HIDE_WELCOME_SCREEN, versionCode));
             }
         }
     }
 
     private void hashPassword() {
         final String originalTag = siteTag.getText().toString();
-        final String key = masterKey.getText().toString();
+        final CharSequence key = masterKey.getText();
         String tag = originalTag;
 
         if (tag.length() == 0) {
@@ -403,56 +399,40 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
             Toast.makeText(getBaseContext(), R.string.Message_MasterKeyEmpty, Toast.LENGTH_LONG).show();
             masterKey.requestFocus();
         } else {
-            boolean compatibility = tag.startsWith(COMPATIBILITY_PREFIX);
-            if (compatibility) {
-                tag = tag.substring(COMPATIBILITY_PREFIX.length());
-            }
-
-            SharedPreferences prefs = getSharedPreferences(HashItApplication.normalizeSiteTag(tag), MODE_PRIVATE);
-            if (!compatibility) {
-                compatibility = prefs.getBoolean(COMPATIBILITY_MODE,
-                        prefs.getInt(APP_VERSION, -1) < 19 && prefs.getAll().size() > 0)
-                        || settings.getBoolean(COMPATIBILITY_MODE, true);
-            }
+            final HashProfile profile = HashItApplication.getApp(this).getHashProfiles()
+                    .get(tag, true);
 
-            Log.i(LOG_TAG, String.format("Compatibility mode %s", compatibility ? "enabled" : "disabled"));
-
-            if (!compatibility) {
-                tag = PasswordHasher.hashPassword(SeedHelper.getSeed(settings), tag, //
-                        24, //
-                        true, // require digits
-                        true, // require punctuation
-                        true, // require mixed case
-                        false, // no special chars
-                        false // only digits
-                );
-            }
+            Log.i(LOG_TAG, String.format("Compatibility mode %s", profile.isCompatibility() ? "enabled" : "disabled"));
 
-            String hash = PasswordHasher.hashPassword(tag, key, //
-                    getStringAsInt(HASH_WORD_SIZE, prefs, settings, 8), //
-                    getBool(REQUIRE_DIGITS, prefs, settings, true), //
-                    getBool(REQUIRE_PUNCTUATION, prefs, settings, true), //
-                    getBool(REQUIRE_MIXED_CASE, prefs, settings, true), //
-                    getBool(RESTRICT_SPECIAL_CHARS, prefs, settings, false), //
-                    getBool(RESTRICT_DIGITS, prefs, settings, false));
+            final HashParameters parameters = profile.getParameters();
+            final char[] hash = new char[parameters.getHashWordSize()];
+            boolean copiedToClipboard = false;
+            try {
+                final int length = PasswordHasher.batch(key,
+                        HashEngines.forName(profile.getEngine()))
+                        .hashPassword(profile.getHashTag(), parameters, hash, 0);
 
-            hashWord.setText(hash, BufferType.NORMAL);
+                hashWord.setText(hash, 0, length);
 
-            boolean copiedToClipboard = false;
-            if (!settings.getBoolean(DISABLE_CLIPBOARD, false))
-                try {
-                    ClipboardManager clipboard = (ClipboardManager) getSystemService(CLIPBOARD_SERVICE);
-                    clipboard.setText(hash);
-                    copiedToClipboard = true;
-                    Toast.makeText(getBaseContext(), R.string.Message_HashCopiedToClipboard, Toast.LENGTH_LONG).show();
-                } catch (NullPointerException e) {
-                    // catches Samsung clipboard bug -- cf. http://veetipaananen.fi/dear-samsung-please-fix-your-clipboard/
-                    Toast.makeText(getBaseContext(), R.string.Message_ClipboardError, Toast.LENGTH_LONG).show();
-                }
+                if (!settings.getBoolean(DISABLE_CLIPBOARD, false))
+                    try {
+                        ClipboardManager clipboard = (ClipboardManager) getSystemService(CLIPBOARD_SERVICE);
+                        clipboard.setText(CharBuffer.wrap(hash, 0, length));
+                        copiedToClipboard = true;
+                        Toast.makeText(getBaseContext(), R.string.Message_HashCopiedToClipboard, Toast.LENGTH_LONG).show();
+                    } catch (NullPointerException e) {
+                        // catches Samsung clipboard bug -- cf. http://veetipaananen.fi/dear-samsung-please-fix-your-clipboard/
+                        Toast.makeText(getBaseContext(), R.string.Message_ClipboardError, Toast.LENGTH_LONG).show();
+                    }
+            } finally {
+                // the text view and the clipboard hold their own copies
+                Arrays.fill(hash, '\0');
+            }
 
             if (originalHost != null) {
                 // save site tag for host name
-                settings.edit().putString(String.format(SITE_MAP, originalHost), originalTag).commit();
+                HashItApplication.getApp(this).getSiteMappings()
+                        .putSiteTag(originalHost.toString(), originalTag);
             }
 
             if (settings.getBoolean(ENABLE_HISTORY, true)) {
@@ -460,8 +440,9 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
                 masterKey.requestFocus();
             }
 
-            final int cacheDuration = getStringAsInt(CACHE_DURATION, settings, null, -1);
+            final int cacheDuration = SiteParameters.getStringAsInt(CACHE_DURATION, settings, null, -1);
             if (cacheDuration > 0) {
+                final String cachedKey = key.toString();
                 final Context ctx = getApplicationContext();
                 MemoryCacheServiceImpl.ensureStarted(ctx);
                 ctx.bindService(new Intent(ctx, MemoryCacheServiceImpl.class),
@@ -472,7 +453,7 @@ public class PasswordActivity extends Activity implements SharedPreferences.OnSh
 
                             public void onServiceConnected(ComponentName name, IBinder service) {
                                 ((MemoryCacheService.Binder) service).getService().putEntry(
-                                        MASTER_KEY_CACHE, key, cacheDuration * 60 * 1000);
+                                        MASTER_KEY_CACHE, cachedKey, cacheDuration * 60 * 1000);
                             }
                         }, 0);
             }
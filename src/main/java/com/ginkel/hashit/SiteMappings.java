@@ -0,0 +1,115 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import com.ginkel.hashit.util.JournalStore;
+import com.ginkel.hashit.util.WriteBehind;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.ginkel.hashit.Constants.*;
+
+/**
+ * Remembers the site tags chosen for the host names of shared URLs. The mappings are kept in a
+ * {@link JournalStore} of their own instead of the settings, so that they are only read when
+ * needed and storing a mapping does not rewrite all others.
+ */
+final class SiteMappings {
+    private static final String FILE_NAME = "site_map.journal";
+
+    private final File file;
+    private final JournalStore store;
+    private final SharedPreferences settings;
+    private boolean migrated;
+
+    SiteMappings(Context ctx) {
+        file = new File(ctx.getFilesDir(), FILE_NAME);
+        store = new JournalStore(file, WriteBehind.get());
+        settings = PreferenceManager.getDefaultSharedPreferences(ctx);
+    }
+
+    /**
+     * Returns the site tag mapped to a host name or <code>null</code> if there is none.
+     */
+    String getSiteTag(String host) {
+        migrate();
+        return store.get(host);
+    }
+
+    void putSiteTag(String host, String siteTag) {
+        migrate();
+        try {
+            store.put(host, siteTag);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to store site tag for " + host, e);
+        }
+    }
+
+    /**
+     * Returns all site tags mapped to any host name.
+     */
+    Collection<String> getSiteTags() {
+        migrate();
+        return store.getAll().values();
+    }
+
+    /**
+     * Moves the mappings stored in the settings by earlier versions into the store.
+     */
+    private synchronized void migrate() {
+        if (migrated)
+            return;
+        migrated = true;
+
+        final String prefix = String.format(SITE_MAP, "");
+        final Map<String, String> legacy = new HashMap<String, String>();
+        for (Map.Entry<String, ?> entry : settings.getAll().entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof String) {
+                legacy.put(entry.getKey().substring(prefix.length()), (String) entry.getValue());
+            }
+        }
+        if (legacy.isEmpty())
+            return;
+
+        try {
+            // written synchronously, as the settings are cleaned up right afterwards
+            new JournalStore(file).putAll(legacy);
+        } catch (IOException e) {
+            // keep them in the settings for now and retry on the next start
+            Log.e(LOG_TAG, "Failed to migrate site tag mappings", e);
+            return;
+        }
+        final SharedPreferences.Editor editor = settings.edit();
+        for (String host : legacy.keySet()) {
+            editor.remove(prefix + host);
+        }
+        editor.commit();
+        Log.i(LOG_TAG, String.format("Migrated %d site tag mappings", legacy.size()));
+    }
+}
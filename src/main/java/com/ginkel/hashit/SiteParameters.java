@@ -0,0 +1,120 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.ginkel.hashit.engine.HashEngines;
+import com.ginkel.hashit.engine.KdfCalibrator;
+import com.ginkel.hashit.util.WriteBehind;
+
+import static com.ginkel.hashit.Constants.*;
+
+/**
+ * Resolves the hash parameters of a site from its site-specific preferences, falling back to the
+ * global defaults.
+ */
+final class SiteParameters {
+    private SiteParameters() {
+    }
+
+    static boolean getBool(String key, SharedPreferences prefs, SharedPreferences defaults,
+                           boolean def) {
+        return prefs.getBoolean(key, defaults != null ? defaults.getBoolean(key, def) : def);
+    }
+
+    /**
+     * Works around issue 2096.
+     */
+    static int getStringAsInt(String key, SharedPreferences prefs,
+                              SharedPreferences defaults, int def) {
+        return Integer.valueOf(prefs.getString(key, defaults != null ? defaults.getString(key,
+                String.valueOf(def)) : String.valueOf(def)));
+    }
+
+    /**
+     * Returns the site-specific preferences for a (non-prefixed) site tag.
+     */
+    static SharedPreferences getSitePreferences(Context ctx, String tag) {
+        return HashItApplication.getApp(ctx).getSiteProfiles().get(tag);
+    }
+
+    /**
+     * Determines whether a site is hashed in compatibility mode, i.e. without a private site tag.
+     * Profiles created by app versions prior to 19 always use compatibility mode.
+     */
+    static boolean isCompatibilityMode(SharedPreferences prefs, SharedPreferences settings) {
+        return prefs.getBoolean(COMPATIBILITY_MODE,
+                prefs.getInt(APP_VERSION, -1) < 19 && prefs.getAll().size() > 0)
+                || settings.getBoolean(COMPATIBILITY_MODE, true);
+    }
+
+    /**
+     * Resolves the hash word parameters of a site.
+     */
+    static HashParameters getHashParameters(SharedPreferences prefs, SharedPreferences settings) {
+        return new HashParameters(getStringAsInt(HASH_WORD_SIZE, prefs, settings, 8), //
+                getBool(REQUIRE_DIGITS, prefs, settings, true), //
+                getBool(REQUIRE_PUNCTUATION, prefs, settings, true), //
+                getBool(REQUIRE_MIXED_CASE, prefs, settings, true), //
+                getBool(RESTRICT_SPECIAL_CHARS, prefs, settings, false), //
+                getBool(RESTRICT_DIGITS, prefs, settings, false));
+    }
+
+    /**
+     * Returns the name of the hash engine a site is hashed with. Compatibility mode always implies
+     * HMAC-SHA1, as do site profiles that predate the choice of engines.
+     */
+    static String getHashEngine(SharedPreferences prefs, boolean compatibility) {
+        if (compatibility)
+            return HashEngines.HMAC_SHA1;
+        return prefs.getString(HASH_ENGINE, HashEngines.HMAC_SHA1);
+    }
+
+    /**
+     * Records which app version a new set of preferences was created with and, for site profiles,
+     * which engine the site is hashed with.
+     *
+     * @param engine
+     *            the engine to pin or <code>null</code> if the preferences are not site-specific
+     */
+    static void createProfile(SharedPreferences prefs, String engine, int appVersion) {
+        SharedPreferences.Editor editor = prefs.edit()
+                .putInt(APP_VERSION, appVersion)
+                .putLong(CREATION_DATE, System.currentTimeMillis());
+        if (engine != null) {
+            editor.putString(HASH_ENGINE, engine);
+        }
+        WriteBehind.apply(editor);
+    }
+
+    /**
+     * Returns the calibrated PBKDF2 iteration count, calibrating (and storing) it if necessary.
+     */
+    static int getKdfIterations(SharedPreferences settings) {
+        int iterations = settings.getInt(KDF_ITERATIONS, -1);
+        if (iterations <= 0) {
+            iterations = KdfCalibrator.calibratePbkdf2(KdfCalibrator.DEFAULT_TARGET_MILLIS);
+            WriteBehind.apply(settings.edit().putInt(KDF_ITERATIONS, iterations));
+        }
+        return iterations;
+    }
+}
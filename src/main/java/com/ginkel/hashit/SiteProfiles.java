@@ -0,0 +1,505 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.ginkel.hashit.util.HistoryManager;
+import com.ginkel.hashit.util.JournalStore;
+import com.ginkel.hashit.util.WriteBehind;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.HONEYCOMB;
+import static com.ginkel.hashit.Constants.LOG_TAG;
+
+/**
+ * Keeps the site-specific preferences of all sites in a single {@link JournalStore}, which maps
+ * each (normalized) site tag to its encoded profile. Earlier versions kept one preferences file
+ * per site. That scattered I/O across as many files as there are sites and loaded each one in
+ * full.
+ * <p>
+ * The journal is read on first access, but a profile is only decoded once its site is looked up.
+ * A bounded number of decoded profiles is kept, least recently used first out.
+ * Profiles are exposed as {@link SharedPreferences}, so that they can be resolved like any other
+ * preferences. The preferences file an earlier version kept for a site is migrated once the
+ * site is looked up.
+ * <p>
+ * Listeners registered with the store are notified of the changes of all profiles, with the
+ * changed profile as the source. Listeners registered with a profile only hear of its own
+ * changes. Unlike the platform's preferences, both hold on to their listeners until they are
+ * unregistered.
+ */
+final class SiteProfiles {
+    /** The preferences file the {@link ParametersActivity} edits a site profile in */
+    static final String EDITOR_PREFS_NAME = "site_profile_editor";
+
+    private static final String FILE_NAME = "site_profiles.journal";
+    private static final String PREFS_SUFFIX = ".xml";
+    private static final char SEPARATOR = ';';
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final Context ctx;
+    private final JournalStore store;
+    /** The decoded (unmodifiable) profiles, by key */
+    private final Map<String, Map<String, Object>> profiles;
+    private final List<SharedPreferences.OnSharedPreferenceChangeListener> listeners =
+            new ArrayList<SharedPreferences.OnSharedPreferenceChangeListener>(1);
+    /** The listeners registered with individual profiles, by key */
+    private final Map<String, List<SharedPreferences.OnSharedPreferenceChangeListener>>
+            profileListeners =
+            new HashMap<String, List<SharedPreferences.OnSharedPreferenceChangeListener>>();
+    /** The directory of the per-site preferences files of earlier versions */
+    private final File legacyDir;
+    /** The names of the preferences files that are not site profiles */
+    private final Set<String> reserved;
+
+    SiteProfiles(Context ctx) {
+        this(ctx, DEFAULT_CAPACITY);
+    }
+
+    SiteProfiles(Context ctx, final int capacity) {
+        this.ctx = ctx;
+        final File file = new File(ctx.getFilesDir(), FILE_NAME);
+        store = new JournalStore(file, WriteBehind.get());
+        legacyDir = new File(ctx.getApplicationInfo().dataDir, "shared_prefs");
+        reserved = new HashSet<String>(Arrays.asList(ctx.getPackageName() + "_preferences",
+                HistoryManager.PREFS_NAME, EDITOR_PREFS_NAME));
+        profiles = new LinkedHashMap<String, Map<String, Object>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, Object>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the profile of a (non-prefixed) site tag, which is empty for unknown sites. The
+     * profiles of the same site are equal, but not necessarily identical.
+     */
+    synchronized SharedPreferences get(String tag) {
+        return new Profile(HashItApplication.normalizeSiteTag(tag));
+    }
+
+    /**
+     * Returns the values of a profile, decoding it if necessary.
+     */
+    private synchronized Map<String, Object> load(String key) {
+        Map<String, Object> values = profiles.get(key);
+        if (values == null) {
+            final String encoded = store.get(key);
+            values = encoded == null ? migrate(key)
+                    : Collections.unmodifiableMap(decode(encoded));
+            profiles.put(key, values);
+        }
+        return values;
+    }
+
+    synchronized void registerOnSharedPreferenceChangeListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    synchronized void unregisterOnSharedPreferenceChangeListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Replaces the contents of an editing buffer with the profile of a site.
+     */
+    void copyTo(String tag, SharedPreferences buffer) {
+        final SharedPreferences.Editor editor = buffer.edit().clear();
+        for (Map.Entry<String, ?> entry : get(tag).getAll().entrySet()) {
+            put(editor, entry.getKey(), entry.getValue());
+        }
+        editor.commit();
+    }
+
+    /**
+     * Replaces the profile of a site with the contents of an editing buffer.
+     */
+    synchronized void copyFrom(String tag, SharedPreferences buffer) {
+        ((Profile) get(tag)).update(new HashMap<String, Object>(buffer.getAll()));
+    }
+
+    private static void put(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        } else if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Set && SDK_INT >= HONEYCOMB) {
+            @SuppressWarnings("unchecked")
+            final Set<String> values = (Set<String>) value;
+            editor.putStringSet(key, values);
+        } else {
+            Log.w(LOG_TAG, String.format("Ignoring %s of unsupported type", key));
+        }
+    }
+
+    /**
+     * Encodes a profile as a sequence of entries, each consisting of a type character and the
+     * key and value prefixed with their lengths (e.g. <code>Z13;RequireDigits4;true</code>).
+     * The value of a string set is the concatenation of its length-prefixed elements.
+     */
+    static String encode(Map<String, ?> values) {
+        final StringBuilder result = new StringBuilder(values.size() * 32);
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            final Object value = entry.getValue();
+            final char type;
+            if (value instanceof Boolean) {
+                type = 'Z';
+            } else if (value instanceof Integer) {
+                type = 'I';
+            } else if (value instanceof Long) {
+                type = 'J';
+            } else if (value instanceof Float) {
+                type = 'F';
+            } else if (value instanceof String) {
+                type = 'S';
+            } else if (value instanceof Set) {
+                type = 'T';
+            } else {
+                Log.w(LOG_TAG, String.format("Ignoring %s of unsupported type", entry.getKey()));
+                continue;
+            }
+            result.append(type);
+            append(result, entry.getKey());
+            if (type == 'T') {
+                final StringBuilder elements = new StringBuilder();
+                for (Object element : (Set<?>) value) {
+                    append(elements, (String) element);
+                }
+                append(result, elements.toString());
+            } else {
+                append(result, String.valueOf(value));
+            }
+        }
+        return result.toString();
+    }
+
+    private static void append(StringBuilder out, String s) {
+        out.append(s.length()).append(SEPARATOR).append(s);
+    }
+
+    /**
+     * Decodes a profile encoded by {@link #encode(Map)}.
+     */
+    static Map<String, Object> decode(String encoded) {
+        final Map<String, Object> result = new HashMap<String, Object>();
+        try {
+            int pos = 0;
+            while (pos < encoded.length()) {
+                final char type = encoded.charAt(pos++);
+                int sep = encoded.indexOf(SEPARATOR, pos);
+                int end = sep + 1 + Integer.parseInt(encoded.substring(pos, sep));
+                final String key = encoded.substring(sep + 1, end);
+                sep = encoded.indexOf(SEPARATOR, end);
+                pos = sep + 1 + Integer.parseInt(encoded.substring(end, sep));
+                final String value = encoded.substring(sep + 1, pos);
+                switch (type) {
+                    case 'Z':
+                        result.put(key, Boolean.valueOf(value));
+                        break;
+                    case 'I':
+                        result.put(key, Integer.valueOf(value));
+                        break;
+                    case 'J':
+                        result.put(key, Long.valueOf(value));
+                        break;
+                    case 'F':
+                        result.put(key, Float.valueOf(value));
+                        break;
+                    case 'S':
+                        result.put(key, value);
+                        break;
+                    case 'T':
+                        result.put(key, decodeSet(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown type " + type);
+                }
+            }
+        } catch (RuntimeException e) {
+            // hashing with the wrong parameters would silently produce a different hash word
+            throw new IllegalArgumentException("Damaged site profile", e);
+        }
+        return result;
+    }
+
+    private static Set<String> decodeSet(String encoded) {
+        final Set<String> result = new HashSet<String>();
+        int pos = 0;
+        while (pos < encoded.length()) {
+            final int sep = encoded.indexOf(SEPARATOR, pos);
+            pos = sep + 1 + Integer.parseInt(encoded.substring(pos, sep));
+            result.add(encoded.substring(sep + 1, pos));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Moves the preferences file an earlier version kept for a site into the store. These files
+     * were named after the normalized site tag, so the file is only looked for once its site is
+     * looked up. The application keeps other preferences files beside them, which must not be
+     * mistaken for site profiles.
+     */
+    private Map<String, Object> migrate(String key) {
+        if (reserved.contains(key) || !new File(legacyDir, key + PREFS_SUFFIX).exists())
+            return Collections.emptyMap();
+
+        final SharedPreferences legacy = ctx.getSharedPreferences(key, Context.MODE_PRIVATE);
+        final Map<String, Object> values = new HashMap<String, Object>(legacy.getAll());
+        if (!values.isEmpty()) {
+            try {
+                store.put(key, encode(values));
+                // synced right away, as the preferences file is deleted right afterwards
+                store.flush();
+            } catch (IOException e) {
+                // keep the preferences file and retry on the next start
+                Log.e(LOG_TAG, "Failed to migrate site profile", e);
+                return Collections.unmodifiableMap(values);
+            }
+        }
+        legacy.edit().clear().commit();
+        new File(legacyDir, key + PREFS_SUFFIX).delete();
+        Log.i(LOG_TAG, "Migrated site profile " + key);
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Writes a profile to the store, dropping it entirely once it is empty.
+     */
+    private void write(String key, Map<String, Object> values) {
+        try {
+            if (values.isEmpty())
+                store.remove(key);
+            else
+                store.put(key, encode(values));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to persist site profile", e);
+        }
+    }
+
+    /**
+     * The profile of a single site. It merely refers to the site, so modifications are visible to
+     * all users of the profile and written to the store right away.
+     */
+    private final class Profile implements SharedPreferences {
+        private final String key;
+
+        Profile(String key) {
+            this.key = key;
+        }
+
+        private Map<String, Object> values() {
+            return load(key);
+        }
+
+        void update(Map<String, Object> updated) {
+            synchronized (SiteProfiles.this) {
+                final Map<String, Object> previous = values();
+                profiles.put(key, Collections.unmodifiableMap(updated));
+                write(key, updated);
+
+                final Set<String> changed = new HashSet<String>(previous.keySet());
+                changed.addAll(updated.keySet());
+                for (String name : changed) {
+                    final Object value = updated.get(name);
+                    if (value == null ? previous.containsKey(name)
+                            : !value.equals(previous.get(name))) {
+                        dispatch(listeners, name);
+                        dispatch(profileListeners.get(key), name);
+                    }
+                }
+            }
+        }
+
+        private void dispatch(List<OnSharedPreferenceChangeListener> targets, String name) {
+            if (targets == null)
+                return;
+            // copied, as listeners may unregister themselves
+            for (OnSharedPreferenceChangeListener listener
+                    : new ArrayList<OnSharedPreferenceChangeListener>(targets)) {
+                listener.onSharedPreferenceChanged(this, name);
+            }
+        }
+
+        public Map<String, ?> getAll() {
+            return values();
+        }
+
+        public boolean contains(String key) {
+            return values().containsKey(key);
+        }
+
+        public String getString(String key, String defValue) {
+            final Object value = values().get(key);
+            return value != null ? (String) value : defValue;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            final Object value = values().get(key);
+            return value != null ? (Set<String>) value : defValues;
+        }
+
+        public int getInt(String key, int defValue) {
+            final Object value = values().get(key);
+            return value != null ? (Integer) value : defValue;
+        }
+
+        public long getLong(String key, long defValue) {
+            final Object value = values().get(key);
+            return value != null ? (Long) value : defValue;
+        }
+
+        public float getFloat(String key, float defValue) {
+            final Object value = values().get(key);
+            return value != null ? (Float) value : defValue;
+        }
+
+        public boolean getBoolean(String key, boolean defValue) {
+            final Object value = values().get(key);
+            return value != null ? (Boolean) value : defValue;
+        }
+
+        public Editor edit() {
+            return new ProfileEditor(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Profile && key.equals(((Profile) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            // kept with the store, as the profile itself may be dropped from the cache
+            synchronized (SiteProfiles.this) {
+                List<OnSharedPreferenceChangeListener> own = profileListeners.get(key);
+                if (own == null) {
+                    own = new ArrayList<OnSharedPreferenceChangeListener>(1);
+                    profileListeners.put(key, own);
+                }
+                if (!own.contains(listener))
+                    own.add(listener);
+            }
+        }
+
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            synchronized (SiteProfiles.this) {
+                final List<OnSharedPreferenceChangeListener> own = profileListeners.get(key);
+                if (own != null && own.remove(listener) && own.isEmpty())
+                    profileListeners.remove(key);
+            }
+        }
+    }
+
+    private final class ProfileEditor implements SharedPreferences.Editor {
+        private final Profile profile;
+        private final Map<String, Object> modified = new HashMap<String, Object>();
+        private boolean clear;
+
+        ProfileEditor(Profile profile) {
+            this.profile = profile;
+        }
+
+        public SharedPreferences.Editor putString(String key, String value) {
+            return modify(key, value);
+        }
+
+        public SharedPreferences.Editor putStringSet(String key, Set<String> values) {
+            return modify(key, values == null ? null
+                    : Collections.unmodifiableSet(new HashSet<String>(values)));
+        }
+
+        public SharedPreferences.Editor putInt(String key, int value) {
+            return modify(key, value);
+        }
+
+        public SharedPreferences.Editor putLong(String key, long value) {
+            return modify(key, value);
+        }
+
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            return modify(key, value);
+        }
+
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            return modify(key, value);
+        }
+
+        public SharedPreferences.Editor remove(String key) {
+            // this editor marks removals, just like the platform's implementation
+            return modify(key, this);
+        }
+
+        private synchronized SharedPreferences.Editor modify(String key, Object value) {
+            modified.put(key, value);
+            return this;
+        }
+
+        public synchronized SharedPreferences.Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        public synchronized boolean commit() {
+            synchronized (SiteProfiles.this) {
+                final Map<String, Object> updated = clear ? new HashMap<String, Object>()
+                        : new HashMap<String, Object>(profile.getAll());
+                for (Map.Entry<String, Object> entry : modified.entrySet()) {
+                    if (entry.getValue() == this || entry.getValue() == null)
+                        updated.remove(entry.getKey());
+                    else
+                        updated.put(entry.getKey(), entry.getValue());
+                }
+                profile.update(updated);
+            }
+            modified.clear();
+            clear = false;
+            return true;
+        }
+
+        public void apply() {
+            // the store writes behind anyway
+            commit();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Adapts the site tag history for auto-completion. Instead of scanning all site tags on every
+ * keystroke like the filter of {@link android.widget.ArrayAdapter}, prefix queries are answered
+ * by the index of the {@link HistoryManager}.
+ */
+public class HistoryAdapter extends BaseAdapter implements Filterable {
+    private final HistoryManager history;
+    private final LayoutInflater inflater;
+    private final int textViewResourceId;
+    private List<String> items = Collections.emptyList();
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence prefix) {
+            List<String> matches = history.findByPrefix(prefix == null ? "" : prefix.toString());
+            FilterResults results = new FilterResults();
+            results.values = matches;
+            results.count = matches.size();
+            return results;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void publishResults(CharSequence prefix, FilterResults results) {
+            items = (List<String>) results.values;
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+
+    HistoryAdapter(Context context, HistoryManager history, int textViewResourceId) {
+        this.history = history;
+        this.inflater = LayoutInflater.from(context);
+        this.textViewResourceId = textViewResourceId;
+    }
+
+    public int getCount() {
+        return items.size();
+    }
+
+    public String getItem(int position) {
+        return items.get(position);
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) (convertView != null ? convertView : inflater.inflate(
+                textViewResourceId, parent, false));
+        view.setText(getItem(position));
+        return view;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Drops the current results, e.g. because the history has been cleared.
+     */
+    void clear() {
+        items = Collections.emptyList();
+        notifyDataSetInvalidated();
+    }
+}
@@ -20,65 +20,338 @@
 
 package com.ginkel.hashit.util;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
 
 import android.content.Context;
-import android.widget.ArrayAdapter;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import static com.ginkel.hashit.Constants.HISTORY_COMPACTED;
+import static com.ginkel.hashit.Constants.LOG_TAG;
 
 /**
  * Manages the Site Tag history.
+ * <p>
+ * Site tags are ranked by frecency, i.e. the number of their uses with each use's weight halving
+ * every {@link #HALF_LIFE_DAYS} days. Scores are kept in the log domain relative to a fixed
+ * epoch, where a use at time t adds weight e^(t/&tau;). Thus recording a use is O(1) and scores
+ * remain comparable without ever being recomputed.
+ * <p>
+ * The history is bounded. Once the capacity is exceeded, the site tag with the lowest frecency is
+ * evicted. As all weights decay at the same rate, that is the one with the lowest score. The
+ * entries are also kept ordered by score, so finding it takes O(log n). Eviction only happens
+ * when a new site tag is added, never while a history is loaded.
+ * <p>
+ * The history is persisted in a {@link JournalStore}, which maps each site tag to its score, so
+ * adding a site tag appends a single record instead of rewriting the whole history. Histories
+ * stored in the preferences by earlier versions are migrated on first access.
+ * <p>
+ * For auto-completion, the site tags are kept in a sorted index of their lower case forms, so a
+ * prefix query only costs a lookup plus the number of matches.
  * 
  * @author Thilo-Alexander Ginkel
  */
 public class HistoryManager {
-    private final ListSharedPreferences prefs;
-    private final String prefsKey;
-    private final ArrayAdapter<String> adapter;
-    private final ArrayAdapterToListAdapter<String> listAdapter;
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final double HALF_LIFE_DAYS = 14;
+
+    public static final String PREFS_NAME = "history";
+    private static final Map<String, JournalStore> JOURNALS = new HashMap<String, JournalStore>();
+    /** The time (in ms) it takes a weight to decay by a factor of e */
+    private static final double TAU = HALF_LIFE_DAYS * 24 * 60 * 60 * 1000 / Math.log(2);
+    /** The score difference used to preserve the order of site tags without scores */
+    private static final double RANK_STEP = 1e-9;
+
+    private static final class Entry {
+        final String siteTag;
+        double score;
+
+        Entry(String siteTag, double score) {
+            this.siteTag = siteTag;
+            this.score = score;
+        }
+    }
 
-    private boolean empty;
+    private static final Comparator<Entry> BY_SCORE = new Comparator<Entry>() {
+        public int compare(Entry lhs, Entry rhs) {
+            return Double.compare(rhs.score, lhs.score);
+        }
+    };
+
+    /** Orders entries lowest score first, breaking ties by site tag */
+    private static final Comparator<Entry> EVICTION_ORDER = new Comparator<Entry>() {
+        public int compare(Entry lhs, Entry rhs) {
+            int result = Double.compare(lhs.score, rhs.score);
+            return result != 0 ? result : lhs.siteTag.compareTo(rhs.siteTag);
+        }
+    };
+
+    private final Context context;
+    private final int textViewResourceId;
+    private final JournalStore journal;
+    private HistoryAdapter adapter;
+    private final List<String> evicted = new ArrayList<String>();
+    private final int capacity;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    /** The entries in {@link #EVICTION_ORDER}; an entry must be taken out to change its score */
+    private final SortedSet<Entry> ranked = new TreeSet<Entry>(EVICTION_ORDER);
+    /** Maps the lower case form of each site tag (followed by NUL and the tag itself) to its entry */
+    private final SortedMap<String, Entry> index = new TreeMap<String, Entry>();
 
     public HistoryManager(Context context, String prefsKey, int textViewResourceId) {
-        prefs = new PreferenceListStorage(context.getSharedPreferences("history",
-                Context.MODE_PRIVATE));
-        this.prefsKey = prefsKey;
-        List<String> list;
-        adapter = new ArrayAdapter<String>(context, textViewResourceId,
-                list = prefs.getStringList(prefsKey));
-        listAdapter = new ArrayAdapterToListAdapter<String>(adapter);
-        empty = list.isEmpty();
+        this(context, prefsKey, textViewResourceId, DEFAULT_CAPACITY);
     }
 
-    public void add(String historyItem) {
-        // make sure that we do not end up inserting duplicates
-        adapter.remove(historyItem);
-        adapter.insert(historyItem, 0);
-        empty = false;
+    public HistoryManager(Context context, String prefsKey, int textViewResourceId,
+            int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.context = context;
+        this.textViewResourceId = textViewResourceId;
+        this.capacity = capacity;
+        journal = openJournal(context, prefsKey);
+
+        for (Entry entry : readEntries(journal)) {
+            entries.put(entry.siteTag, entry);
+            ranked.add(entry);
+            index.put(indexKey(entry.siteTag), entry);
+        }
     }
 
-    public ArrayAdapter<String> getAdapter() {
-        return adapter;
+    private static String indexKey(String siteTag) {
+        return siteTag.toLowerCase() + '\0' + siteTag;
     }
 
-    public List<String> getHistory() {
-        return listAdapter;
+    /**
+     * Returns the current time on the scale of scores.
+     */
+    private static double now() {
+        return System.currentTimeMillis() / TAU;
     }
 
-    public boolean isEmpty() {
-        /*
-         * Unfortunately ArrayAdapter.getCount() does not reliably report the right size of the
-         * array, so we must track this on our own
-         */
-        return empty;
+    /**
+     * Adds a use at the given time to a score, i.e. computes log(e^score + e^time) without
+     * overflowing.
+     */
+    static double addUse(double score, double time) {
+        if (Double.isInfinite(score)) {
+            return time;
+        }
+        return Math.max(score, time) + Math.log1p(Math.exp(-Math.abs(score - time)));
     }
 
-    public void clear() {
-        adapter.clear();
+    /**
+     * Reads the persisted history without setting up an adapter, e.g. for use by background
+     * tasks.
+     */
+    public static List<String> load(Context context, String prefsKey) {
+        List<Entry> stored = readEntries(openJournal(context, prefsKey));
+        List<String> result = new ArrayList<String>(stored.size());
+        for (Entry entry : stored) {
+            result.add(entry.siteTag);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the entries of a journal, highest score first.
+     */
+    private static List<Entry> readEntries(JournalStore journal) {
+        Map<String, String> stored = journal.getAll();
+        List<Entry> result = new ArrayList<Entry>(stored.size());
+        for (Map.Entry<String, String> entry : stored.entrySet()) {
+            result.add(new Entry(entry.getKey(), Double.parseDouble(entry.getValue())));
+        }
+        Collections.sort(result, BY_SCORE);
+        return result;
+    }
+
+    /**
+     * Returns the journal holding a history, which is shared by all users within the process.
+     */
+    private static synchronized JournalStore openJournal(Context context, String prefsKey) {
+        JournalStore journal = JOURNALS.get(prefsKey);
+        if (journal == null) {
+            File file = new File(context.getFilesDir(), prefsKey + ".journal");
+            if (!file.exists()) {
+                // written synchronously, as the preferences are cleared right afterwards
+                migrate(context, prefsKey, new JournalStore(file));
+            }
+            journal = new JournalStore(file, WriteBehind.get());
+            JOURNALS.put(prefsKey, journal);
+        }
+        return journal;
+    }
+
+    /**
+     * Moves a history stored in the preferences by earlier versions into the journal.
+     */
+    private static void migrate(Context context, String prefsKey, JournalStore journal) {
+        ListSharedPreferences prefs = openStorage(context);
+        List<String> legacy = prefs.getStringList(prefsKey);
+        if (legacy.isEmpty()) {
+            return;
+        }
+        Map<String, String> entries = new HashMap<String, String>();
+        double score = now();
+        for (String siteTag : legacy) {
+            if (siteTag != null && !entries.containsKey(siteTag)) {
+                entries.put(siteTag, Double.toString(score));
+                score -= RANK_STEP;
+            }
+        }
+        try {
+            journal.putAll(entries);
+        } catch (IOException e) {
+            // keep the preferences for the next attempt
+            Log.e(LOG_TAG, "Failed to migrate history", e);
+            return;
+        }
         prefs.edit().clear().commit();
-        empty = true;
+        Log.i(LOG_TAG, String.format("Migrated %d history entries", entries.size()));
+    }
+
+    private static ListSharedPreferences openStorage(Context context) {
+        PreferenceListStorage storage = new PreferenceListStorage(context.getSharedPreferences(
+                PREFS_NAME, Context.MODE_PRIVATE));
+        compactOnce(context, storage);
+        return storage;
     }
 
-    public void save() {
-        prefs.edit().putStrings(prefsKey, getHistory()).commit();
+    /**
+     * Removes the list keys earlier versions left behind in the history file. This only happens
+     * once, as later versions do not leave any garbage.
+     */
+    private static synchronized void compactOnce(Context context, PreferenceListStorage storage) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        if (settings.getBoolean(HISTORY_COMPACTED, false)) {
+            return;
+        }
+        File file = new File(new File(context.getApplicationInfo().dataDir, "shared_prefs"),
+                PREFS_NAME + ".xml");
+        long before = file.length();
+        int removed = storage.compact();
+        Log.i(LOG_TAG, String.format("Compacted history, removed %d keys and reclaimed %d bytes",
+                removed, before - file.length()));
+        WriteBehind.apply(settings.edit().putBoolean(HISTORY_COMPACTED, true));
+    }
+
+    /**
+     * Records a use of a site tag, raising its score.
+     */
+    public void add(String historyItem) {
+        final double score;
+        final List<String> removed;
+        synchronized (this) {
+            Entry entry = entries.get(historyItem);
+            if (entry == null) {
+                entry = new Entry(historyItem, addUse(Double.NEGATIVE_INFINITY, now()));
+                entries.put(historyItem, entry);
+                ranked.add(entry);
+                index.put(indexKey(historyItem), entry);
+                evictBeyondCapacity(entry);
+            } else {
+                ranked.remove(entry);
+                entry.score = addUse(entry.score, now());
+                ranked.add(entry);
+            }
+            score = entry.score;
+            removed = drainEvicted();
+        }
+        try {
+            journal.put(historyItem, Double.toString(score));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to persist history", e);
+        }
+        removeEvicted(removed);
+    }
+
+    /**
+     * Evicts the site tags with the lowest scores until the history fits its capacity again,
+     * sparing the one just added.
+     */
+    private void evictBeyondCapacity(Entry added) {
+        while (entries.size() > capacity) {
+            Iterator<Entry> it = ranked.iterator();
+            Entry lowest = it.next();
+            if (lowest == added) {
+                lowest = it.next();
+            }
+            it.remove();
+            entries.remove(lowest.siteTag);
+            index.remove(indexKey(lowest.siteTag));
+            evicted.add(lowest.siteTag);
+        }
+    }
+
+    private List<String> drainEvicted() {
+        if (evicted.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<String>(evicted);
+        evicted.clear();
+        return result;
+    }
+
+    private void removeEvicted(List<String> removed) {
+        try {
+            for (String siteTag : removed) {
+                journal.remove(siteTag);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to persist history", e);
+        }
+    }
+
+    /**
+     * Returns all site tags starting with the given prefix (ignoring case), highest frecency
+     * first. May be called from any thread.
+     */
+    public synchronized List<String> findByPrefix(String prefix) {
+        final String from = prefix.toLowerCase();
+        final List<Entry> matches = new ArrayList<Entry>(index.subMap(from,
+                from + Character.MAX_VALUE).values());
+        Collections.sort(matches, BY_SCORE);
+        final List<String> result = new ArrayList<String>(matches.size());
+        for (Entry entry : matches) {
+            result.add(entry.siteTag);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the adapter for auto-completion. As opposed to the history itself, it must be
+     * created on the UI thread.
+     */
+    public synchronized HistoryAdapter getAdapter() {
+        if (adapter == null) {
+            adapter = new HistoryAdapter(context, this, textViewResourceId);
+        }
+        return adapter;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public void clear() {
+        final HistoryAdapter adapter;
+        synchronized (this) {
+            entries.clear();
+            ranked.clear();
+            index.clear();
+            adapter = this.adapter;
+        }
+        if (adapter != null) {
+            adapter.clear();
+        }
+        try {
+            journal.clear();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to persist history", e);
+        }
     }
 }
@@ -0,0 +1,294 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+import android.util.Log;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.ginkel.hashit.Constants.LOG_TAG;
+
+/**
+ * A persistent string map backed by an append-only journal file. The journal is read on first
+ * access into a hash map, so lookups are O(1), and every modification appends a single record
+ * instead of rewriting the whole file. Once the journal holds more obsolete records than live
+ * ones, it is compacted into a fresh file.
+ * <p>
+ * Modifications take effect in memory right away. They are either written and synced to disk
+ * immediately or handed to a {@link WriteBehind} writer, in which case repeated modifications of
+ * the same key are coalesced until the writer gets to them.
+ * <p>
+ * Records consist of an operation byte followed by the key and (for {@link #PUT}s) the value in
+ * modified UTF-8. A truncated record at the end of the journal, e.g. after a crash, is discarded.
+ * Instances are thread-safe.
+ */
+public class JournalStore {
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final int MIN_COMPACTION_RECORDS = 64;
+
+    private final File file;
+    private final WriteBehind writeBehind;
+    private Map<String, String> entries;
+    private int records;
+    /** The modifications not yet written, mapping removed keys to <code>null</code> */
+    private final Map<String, String> pending = new LinkedHashMap<String, String>();
+    private boolean pendingClear;
+    /** Serializes the writer thread and callers of {@link #flush()} */
+    private final Object writeLock = new Object();
+
+    private final Runnable writeTask = new Runnable() {
+        public void run() {
+            try {
+                writePending(false);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to write " + file, e);
+            }
+        }
+    };
+
+    public JournalStore(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param writeBehind
+     *            the writer to perform all writes and compactions on or <code>null</code> to write
+     *            on the calling thread
+     */
+    public JournalStore(File file, WriteBehind writeBehind) {
+        this.file = file;
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * Returns the value stored under the given key or <code>null</code> if there is none.
+     */
+    public synchronized String get(String key) {
+        return load().get(key);
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of all entries.
+     */
+    public synchronized Map<String, String> getAll() {
+        return Collections.unmodifiableMap(new HashMap<String, String>(load()));
+    }
+
+    public synchronized int size() {
+        return load().size();
+    }
+
+    /**
+     * Stores a value, appending a record to the journal unless the value is already present.
+     */
+    public synchronized void put(String key, String value) throws IOException {
+        putAll(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Stores several values, appending all records to the journal at once.
+     */
+    public synchronized void putAll(Map<String, String> values) throws IOException {
+        final Map<String, String> current = load();
+        boolean modified = false;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue().equals(current.get(entry.getKey())))
+                continue;
+            current.put(entry.getKey(), entry.getValue());
+            pending.put(entry.getKey(), entry.getValue());
+            modified = true;
+        }
+        if (modified)
+            schedule();
+    }
+
+    /**
+     * Removes the value stored under the given key, if any.
+     */
+    public synchronized void remove(String key) throws IOException {
+        final Map<String, String> current = load();
+        if (!current.containsKey(key))
+            return;
+        current.remove(key);
+        pending.put(key, null);
+        schedule();
+    }
+
+    /**
+     * Removes all values and deletes the journal.
+     */
+    public synchronized void clear() throws IOException {
+        entries = new HashMap<String, String>();
+        pending.clear();
+        pendingClear = true;
+        schedule();
+    }
+
+    private void schedule() throws IOException {
+        if (writeBehind == null)
+            writePending(true);
+        else
+            writeBehind.submit(this, writeTask);
+    }
+
+    /**
+     * Writes all pending modifications and syncs them to disk before returning, e.g. before the
+     * data they replace is deleted. Stores without a {@link WriteBehind} writer already do so for
+     * every modification.
+     */
+    public void flush() throws IOException {
+        if (writeBehind != null)
+            writePending(true);
+    }
+
+    /**
+     * Appends the pending modifications to the journal and compacts it if necessary.
+     *
+     * @param sync
+     *            whether the journal must be synced to disk before returning, which callers
+     *            writing synchronously (e.g. migrations) rely on
+     */
+    private void writePending(boolean sync) throws IOException {
+        synchronized (writeLock) {
+            final Map<String, String> batch;
+            final boolean clear;
+            synchronized (this) {
+                batch = new LinkedHashMap<String, String>(pending);
+                clear = pendingClear;
+                pending.clear();
+                pendingClear = false;
+            }
+
+            if (clear && file.exists() && !file.delete())
+                throw new IOException("Failed to delete " + file);
+            // even without a batch of its own, a flush must sync what the writer appended before
+            if (!batch.isEmpty() || sync && file.exists()) {
+                final FileOutputStream fileOut = new FileOutputStream(file, true);
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        fileOut));
+                try {
+                    for (Map.Entry<String, String> entry : batch.entrySet()) {
+                        if (entry.getValue() != null) {
+                            out.writeByte(PUT);
+                            out.writeUTF(entry.getKey());
+                            out.writeUTF(entry.getValue());
+                        } else {
+                            out.writeByte(REMOVE);
+                            out.writeUTF(entry.getKey());
+                        }
+                    }
+                    if (sync) {
+                        out.flush();
+                        fileOut.getFD().sync();
+                    }
+                } finally {
+                    out.close();
+                }
+            }
+
+            final Map<String, String> live;
+            synchronized (this) {
+                if (clear)
+                    records = 0;
+                records += batch.size();
+                live = records > MIN_COMPACTION_RECORDS && records > 2 * entries.size()
+                        ? new HashMap<String, String>(entries) : null;
+            }
+            if (live != null)
+                compact(live);
+        }
+    }
+
+    private Map<String, String> load() {
+        if (entries != null)
+            return entries;
+
+        entries = new HashMap<String, String>();
+        records = 0;
+        if (!file.exists())
+            return entries;
+
+        boolean truncated = false;
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                int op;
+                while ((op = in.read()) >= 0) {
+                    final String key = in.readUTF();
+                    if (op == PUT)
+                        entries.put(key, in.readUTF());
+                    else if (op == REMOVE)
+                        entries.remove(key);
+                    else
+                        throw new IOException("Unknown journal operation " + op);
+                    records++;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, String.format("Discarding damaged tail of %s after %d records", file,
+                    records), e);
+            truncated = true;
+        }
+        if (truncated) {
+            try {
+                compact(new HashMap<String, String>(entries));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to rewrite " + file, e);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Rewrites the journal so that it only contains the given live entries. Modifications made
+     * after the snapshot was taken are still pending, so they are appended afterwards.
+     */
+    private void compact(Map<String, String> live) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final FileOutputStream fileOut = new FileOutputStream(temp);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        try {
+            for (Map.Entry<String, String> entry : live.entrySet()) {
+                out.writeByte(PUT);
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            // the rename must not become visible before the data, or a crash loses the journal
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file))
+            throw new IOException("Failed to replace " + file);
+        synchronized (this) {
+            records = live.size();
+        }
+    }
+}
@@ -22,24 +22,56 @@ package com.ginkel.hashit.util;
 
 import android.content.SharedPreferences;
 
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * An incarnation of the {@link ListSharedPreferences} interface adding the capability to persist
  * {@link String} {@link List}s over the standard Android implementation.
+ * <p>
+ * A list is stored as a single string value holding the number of elements followed by each
+ * element prefixed with its length (e.g. <code>2;3;foo6;barbaz</code>). Large lists are deflated
+ * and stored base64 encoded instead. Lists written by earlier versions, which used one key per
+ * element, are still read and converted on their next write.
+ * <p>
+ * Change listeners are notified once per changed preference, i.e. once per list written. A single
+ * listener is registered with the underlying preferences, which drops the keys of the legacy
+ * layout before passing each change on to all listeners.
  * 
  * @author Thilo-Alexander Ginkel
  */
 public class PreferenceListStorage implements ListSharedPreferences {
     private static final String INTERNAL_LIST_PREFIX = "_List_";
     private static final String INTERNAL_LIST_SPECIAL_VALUE = "_PrefList_";
+    private static final String INTERNAL_LIST_BLOB_PREFIX = "_PrefList1_";
+    private static final String INTERNAL_LIST_DEFLATED_PREFIX = "_PrefListZ_";
+    private static final char SEPARATOR = ';';
+    /** Encoded lists longer than this (in chars) are compressed */
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    private static final OnSharedPreferenceChangeListener[] NO_LISTENERS = {};
 
     private final SharedPreferences prefs;
-    private final Map<OnSharedPreferenceChangeListener, ListAwareChangeListener> listeners;
+    /** Replaced on every (un)registration, so that notifications do not need to lock or copy */
+    private volatile OnSharedPreferenceChangeListener[] listeners = NO_LISTENERS;
+    private final OnSharedPreferenceChangeListener dispatcher =
+            new OnSharedPreferenceChangeListener() {
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (key == null || key.startsWith(INTERNAL_LIST_PREFIX)) {
+                return;
+            }
+            for (OnSharedPreferenceChangeListener listener : listeners) {
+                listener.onSharedPreferenceChanged(PreferenceListStorage.this, key);
+            }
+        }
+    };
 
     public PreferenceListStorage(SharedPreferences prefs) {
         this.prefs = prefs;
-        this.listeners = new HashMap<OnSharedPreferenceChangeListener, ListAwareChangeListener>(0);
     }
 
     public boolean contains(String key) {
@@ -50,9 +82,26 @@ public class PreferenceListStorage implements ListSharedPreferences {
         return new ListEditorImpl(prefs.edit());
     }
 
+    /**
+     * Returns all preferences, with lists decoded into {@link List}s of {@link String}s. The keys
+     * of the legacy list layout are omitted.
+     */
     public Map<String, ?> getAll() {
-        // TODO not yet supported
-        throw new UnsupportedOperationException();
+        final Map<String, ?> all = prefs.getAll();
+        final Map<String, Object> result = new HashMap<String, Object>(all.size());
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            final String key = entry.getKey();
+            final Object value = entry.getValue();
+            if (key.startsWith(INTERNAL_LIST_PREFIX)) {
+                continue;
+            }
+            if (value instanceof String && isListValue((String) value)) {
+                result.put(key, toList(key, (String) value));
+            } else {
+                result.put(key, value);
+            }
+        }
+        return result;
     }
 
     public boolean getBoolean(String key, boolean defValue) {
@@ -92,14 +141,28 @@ public class PreferenceListStorage implements ListSharedPreferences {
      *             if the specified key references a non-list preference
      */
     public List<String> getStringList(String key) {
-        String value = prefs.getString(key, null);
+        return toList(key, prefs.getString(key, null));
+    }
+
+    private static boolean isListValue(String value) {
+        return value.startsWith(INTERNAL_LIST_BLOB_PREFIX)
+                || value.startsWith(INTERNAL_LIST_DEFLATED_PREFIX)
+                || INTERNAL_LIST_SPECIAL_VALUE.equals(value);
+    }
 
+    private List<String> toList(String key, String value) {
         if (value == null) {
             return new ArrayList<String>();
+        } else if (value.startsWith(INTERNAL_LIST_BLOB_PREFIX)) {
+            return decodeList(key, value, INTERNAL_LIST_BLOB_PREFIX.length());
+        } else if (value.startsWith(INTERNAL_LIST_DEFLATED_PREFIX)) {
+            return decodeList(key, inflate(key, value
+                    .substring(INTERNAL_LIST_DEFLATED_PREFIX.length())), 0);
         } else if (!INTERNAL_LIST_SPECIAL_VALUE.equals(value)) {
             throw new IllegalArgumentException(String.format("%s is not a list value", key));
         }
 
+        // legacy layout, one key per element
         int count = prefs.getInt(INTERNAL_LIST_PREFIX + key + "_Count", 0);
         List<String> result = new ArrayList<String>(count);
         for (int ii = 0; ii < count; ii++) {
@@ -110,40 +173,167 @@ public class PreferenceListStorage implements ListSharedPreferences {
         return result;
     }
 
-    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
-        synchronized (listeners) {
-            ListAwareChangeListener listListener;
-            if (!listeners.containsKey(listener)) {
-                listeners.put(listener, listListener = new ListAwareChangeListener(listener));
-                prefs.registerOnSharedPreferenceChangeListener(listListener);
-            } else {
-                throw new IllegalStateException("listener already registered");
+    /**
+     * Converts all lists still stored in the legacy layout and removes all keys of that layout,
+     * including elements left behind beyond a list's count when it shrank. Only needs to be run
+     * once per preferences file.
+     * 
+     * @return the number of keys removed
+     */
+    public int compact() {
+        final Map<String, ?> all = prefs.getAll();
+        final Editor editor = prefs.edit();
+        int removed = 0;
+        for (Map.Entry<String, ?> entry : all.entrySet()) {
+            final String key = entry.getKey();
+            if (INTERNAL_LIST_SPECIAL_VALUE.equals(entry.getValue())) {
+                editor.putString(key, encodeList(getStringList(key)));
+            } else if (key.startsWith(INTERNAL_LIST_PREFIX)) {
+                editor.remove(key);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            editor.commit();
+        }
+        return removed;
+    }
+
+    /**
+     * Checks whether a key belongs to the legacy layout of a list, i.e. is its count or one of its
+     * elements.
+     */
+    private static boolean isLegacyKey(String candidate, String key) {
+        final int start = INTERNAL_LIST_PREFIX.length() + key.length();
+        if (!candidate.startsWith(INTERNAL_LIST_PREFIX) || !candidate.startsWith(key,
+                INTERNAL_LIST_PREFIX.length()) || candidate.length() == start) {
+            return false;
+        }
+        if (candidate.length() == start + 6 && candidate.endsWith("_Count")) {
+            return true;
+        }
+        for (int ii = start; ii < candidate.length(); ii++) {
+            if (!Character.isDigit(candidate.charAt(ii))) {
+                return false;
             }
         }
+        return true;
     }
 
-    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
-        synchronized (listeners) {
-            OnSharedPreferenceChangeListener listListener = listeners.remove(listener);
-            if (listListener != null) {
-                prefs.unregisterOnSharedPreferenceChangeListener(listListener);
+    /**
+     * Encodes a list into a single string value, compressing it if that pays off.
+     */
+    static String encodeList(Collection<String> values) {
+        StringBuilder result = new StringBuilder(values.size() * 16 + 16);
+        result.append(values.size()).append(SEPARATOR);
+        for (String value : values) {
+            if (value == null) {
+                result.append(-1).append(SEPARATOR);
             } else {
-                throw new IllegalArgumentException("listener not registered");
+                result.append(value.length()).append(SEPARATOR).append(value);
             }
         }
+        if (result.length() > COMPRESSION_THRESHOLD) {
+            String deflated = deflate(result);
+            if (deflated.length() < result.length()) {
+                return INTERNAL_LIST_DEFLATED_PREFIX + deflated;
+            }
+        }
+        return result.insert(0, INTERNAL_LIST_BLOB_PREFIX).toString();
     }
 
-    private class ListAwareChangeListener implements OnSharedPreferenceChangeListener {
-        private OnSharedPreferenceChangeListener listener;
+    /**
+     * Decodes a list encoded by {@link #encodeList(Collection)} in a single pass, starting at the
+     * given offset.
+     */
+    static List<String> decodeList(String key, String encoded, int offset) {
+        try {
+            int pos = encoded.indexOf(SEPARATOR, offset);
+            final int count = Integer.parseInt(encoded.substring(offset, pos));
+            List<String> result = new ArrayList<String>(count);
+            for (int ii = 0; ii < count; ii++) {
+                int start = pos + 1;
+                pos = encoded.indexOf(SEPARATOR, start);
+                final int length = Integer.parseInt(encoded.substring(start, pos));
+                if (length < 0) {
+                    result.add(null);
+                } else {
+                    result.add(encoded.substring(pos + 1, pos + 1 + length));
+                    pos += length;
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(String.format("%s is not a valid list value", key), e);
+        }
+    }
 
-        public ListAwareChangeListener(OnSharedPreferenceChangeListener listener) {
-            this.listener = listener;
+    private static String deflate(CharSequence s) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(s.toString().getBytes("UTF-8"));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(s.length() / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return android.util.Base64.encodeToString(out.toByteArray(), android.util.Base64.NO_WRAP);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        } finally {
+            deflater.end();
         }
+    }
 
-        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-            if (!key.startsWith(INTERNAL_LIST_PREFIX)) {
-                listener.onSharedPreferenceChanged(sharedPreferences, key);
+    private static String inflate(String key, String s) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(android.util.Base64.decode(s, android.util.Base64.NO_WRAP));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(s.length() * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("Truncated input");
+                }
+                out.write(buffer, 0, n);
             }
+            return out.toString("UTF-8");
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException(String.format("%s is not a valid list value", key), e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 not supported", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public synchronized void registerOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        final List<OnSharedPreferenceChangeListener> registered = Arrays.asList(listeners);
+        if (registered.contains(listener)) {
+            throw new IllegalStateException("listener already registered");
+        }
+        final List<OnSharedPreferenceChangeListener> updated =
+                new ArrayList<OnSharedPreferenceChangeListener>(registered);
+        updated.add(listener);
+        listeners = updated.toArray(NO_LISTENERS);
+        if (updated.size() == 1) {
+            prefs.registerOnSharedPreferenceChangeListener(dispatcher);
+        }
+    }
+
+    public synchronized void unregisterOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        final List<OnSharedPreferenceChangeListener> updated =
+                new ArrayList<OnSharedPreferenceChangeListener>(Arrays.asList(listeners));
+        if (!updated.remove(listener)) {
+            throw new IllegalArgumentException("listener not registered");
+        }
+        listeners = updated.toArray(NO_LISTENERS);
+        if (updated.isEmpty()) {
+            prefs.unregisterOnSharedPreferenceChangeListener(dispatcher);
         }
     }
 
@@ -199,8 +389,9 @@ public class PreferenceListStorage implements ListSharedPreferences {
         }
 
         /**
-         * Stores a collection of strings in this preferences bundle. Internally, the list is mapped
-         * to multiple regular string keys, but caution is taken to avoid name collisions.
+         * Stores a collection of strings in this preferences bundle. Internally, the list is encoded
+         * into a single string value. Any keys of the list's legacy layout are removed, including
+         * stale elements beyond its last count.
          * 
          * @param key
          *            the key to store the value under
@@ -208,11 +399,12 @@ public class PreferenceListStorage implements ListSharedPreferences {
          *            the collection of values to store under the specified key
          */
         public ListEditor putStrings(String key, Collection<String> value) {
-            editor.putString(key, INTERNAL_LIST_SPECIAL_VALUE);
-            editor.putInt(INTERNAL_LIST_PREFIX + key + "_Count", value.size());
-            int ii = 0;
-            for (String val : value) {
-                editor.putString(String.format("%s%s%d", INTERNAL_LIST_PREFIX, key, ii++), val);
+            editor.putString(key, encodeList(value));
+            // also catches elements left behind by earlier versions when the list shrank
+            for (String existing : prefs.getAll().keySet()) {
+                if (isLegacyKey(existing, key)) {
+                    editor.remove(existing);
+                }
             }
             return this;
         }
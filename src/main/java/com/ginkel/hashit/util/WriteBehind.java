@@ -0,0 +1,128 @@
+/*
+ * This file is part of Hash It!.
+ * 
+ * Copyright (C) 2009-2011 Thilo-Alexander Ginkel.
+ * Copyright (C) 2011-2014 TG Byte Software GmbH.
+ * 
+ * Hash It! is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Hash It! is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Hash It!.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ginkel.hashit.util;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static android.os.Build.VERSION.SDK_INT;
+import static android.os.Build.VERSION_CODES.GINGERBREAD;
+import static com.ginkel.hashit.Constants.LOG_TAG;
+
+/**
+ * Performs writes on a single background thread, so that they do not block the UI. A write
+ * submitted under the same key as one that is still pending replaces it, so a burst of edits only
+ * results in a single write.
+ */
+public final class WriteBehind {
+    private static final WriteBehind INSTANCE = new WriteBehind();
+
+    private final Map<Object, Runnable> pending = new LinkedHashMap<Object, Runnable>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "WriteBehind");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private boolean busy;
+
+    private final Runnable drain = new Runnable() {
+        public void run() {
+            for (;;) {
+                List<Runnable> batch;
+                synchronized (pending) {
+                    if (pending.isEmpty()) {
+                        busy = false;
+                        pending.notifyAll();
+                        return;
+                    }
+                    batch = new ArrayList<Runnable>(pending.values());
+                    pending.clear();
+                }
+                for (Runnable write : batch) {
+                    try {
+                        write.run();
+                    } catch (RuntimeException e) {
+                        Log.e(LOG_TAG, "Write failed", e);
+                    }
+                }
+            }
+        }
+    };
+
+    private WriteBehind() {
+    }
+
+    public static WriteBehind get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Writes the changes of a preferences editor in the background. Devices that lack
+     * {@link SharedPreferences.Editor#apply()} commit them right away instead, as callers rely on
+     * the changes being visible as soon as this method returns.
+     */
+    public static void apply(SharedPreferences.Editor editor) {
+        if (SDK_INT >= GINGERBREAD) {
+            editor.apply();
+        } else if (!editor.commit()) {
+            Log.e(LOG_TAG, "Failed to commit preferences");
+        }
+    }
+
+    /**
+     * Schedules a write, replacing any pending write with the same key.
+     */
+    public void submit(Object key, Runnable write) {
+        synchronized (pending) {
+            pending.put(key, write);
+            if (!busy) {
+                busy = true;
+                writer.execute(drain);
+            }
+        }
+    }
+
+    /**
+     * Blocks until all writes submitted so far have been performed, e.g. before the process may
+     * be killed.
+     */
+    public void flush() {
+        synchronized (pending) {
+            try {
+                while (busy) {
+                    pending.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}